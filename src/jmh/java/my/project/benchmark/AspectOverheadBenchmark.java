@@ -0,0 +1,107 @@
+package my.project.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.prometheus.client.CollectorRegistry;
+
+import my.project.util.LoggingAspect;
+import my.project.util.async.UserServiceExecutor;
+import my.project.util.id.SnowflakeIdAllocator;
+import my.project.util.logging.LoggingProperties;
+import my.project.util.metrics.MetricsAspect;
+import my.project.util.metrics.MetricsProperties;
+import my.project.util.shard.ShardRouter;
+import my.project.util.shard.ShardingProperties;
+import my.project.web.UserController;
+import my.project.web.UserExporter;
+import my.project.web.UserImporter;
+import my.project.web.UserRepository;
+import my.project.web.UserService;
+
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same controller call made directly and through MetricsAspect and LoggingAspect, the
+ * difference to {@link #unadvised()} is the per request cost of each aspect.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g", "-XX:+UseG1GC" })
+public class AspectOverheadBenchmark {
+
+    @Param({ "WARN", "DEBUG" })
+    public String logLevel;
+
+    private UserController unadvised;
+    private UserController metered;
+    private UserController logged;
+    private UserController meteredAndLogged;
+
+    @Setup
+    public void setUp() {
+        ((Logger) LoggerFactory.getLogger("my.project.util.LoggingAspect")).setLevel(Level.toLevel(logLevel));
+
+        UserRepository userRepo = InMemoryUserRepository.create(Benchmarks.SEED_USERS);
+        UserService userService = Benchmarks.inMemoryUserService(userRepo);
+        ObjectMapper mapper = new ObjectMapper();
+
+        // inline execution, the executor hand-off is not what is being measured here
+        UserController controller = new UserController(
+                userService,
+                new UserExporter(userRepo, mapper, ShardRouter.unsharded(), TransactionOperations.withoutTransaction(),
+                        new SnowflakeIdAllocator(new CollectorRegistry(), new ShardingProperties(), "0", ""), Duration.ZERO),
+                new UserImporter(userService, mapper, 1_000, 5_000),
+                new UserServiceExecutor(new CollectorRegistry(), false, 1, 1)
+        );
+
+        MetricsAspect metricsAspect = new MetricsAspect(new CollectorRegistry(), new MetricsProperties());
+        LoggingAspect loggingAspect = new LoggingAspect(new LoggingProperties(), new CollectorRegistry());
+
+        unadvised = controller;
+        metered = advise(controller, metricsAspect);
+        logged = advise(controller, loggingAspect);
+        meteredAndLogged = advise(controller, metricsAspect, loggingAspect);
+    }
+
+    private static UserController advise(UserController target, Object... aspects) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+
+        for (Object aspect : aspects)
+            factory.addAspect(aspect);
+
+        return factory.getProxy();
+    }
+
+    @Benchmark
+    public ResponseEntity<?> unadvised() {
+        return unadvised.getUser("1", null).join();
+    }
+
+    @Benchmark
+    public ResponseEntity<?> metricsAspect() {
+        return metered.getUser("1", null).join();
+    }
+
+    @Benchmark
+    public ResponseEntity<?> loggingAspect() {
+        return logged.getUser("1", null).join();
+    }
+
+    @Benchmark
+    public ResponseEntity<?> bothAspects() {
+        return meteredAndLogged.getUser("1", null).join();
+    }
+
+}
@@ -0,0 +1,87 @@
+package my.project.benchmark;
+
+import io.prometheus.client.CollectorRegistry;
+
+import my.project.UserServiceDriver;
+import my.project.util.cache.UserResponseCache;
+import my.project.util.cache.bus.LoopbackInvalidationBus;
+import my.project.util.coalesce.SingleFlights;
+import my.project.util.index.UsernameIndex;
+import my.project.util.index.UsernamePrefixIndex;
+import my.project.util.shard.ShardRouter;
+import my.project.web.UserBatchWriter;
+import my.project.web.UserGroupCommitter;
+import my.project.web.UserRepository;
+import my.project.web.UserService;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared wiring for the benchmarks, kept in one place so every benchmark measures the same
+ * configuration.
+ */
+final class Benchmarks {
+
+    static final int SEED_USERS = 1_000;
+
+    private Benchmarks() {
+    }
+
+    /**
+     * UserService over the in memory repository, wired the same way Spring wires it but
+     * without any proxies or aspects.
+     */
+    static UserService inMemoryUserService(UserRepository userRepo) {
+        UsernameIndex usernameIndex = new UsernameIndex(userRepo, new CollectorRegistry(), 10_000, 0.01, 0.25);
+        usernameIndex.rebuild();
+
+        UsernamePrefixIndex prefixIndex = new UsernamePrefixIndex(userRepo, new CollectorRegistry(), 10_000, Duration.ofMinutes(1));
+        prefixIndex.load();
+
+        return new UserService(
+                userRepo,
+                usernameIndex,
+                prefixIndex,
+                new UserResponseCache(new CollectorRegistry(), 10_000, Duration.ofMinutes(10), Duration.ofMinutes(1)),
+                new UserBatchWriter(userRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()),
+                new UserGroupCommitter(new UserBatchWriter(userRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()), new CollectorRegistry(), false, 100, Duration.ofMillis(2), 1000),
+                new SingleFlights(new CollectorRegistry(), true),
+                new LoopbackInvalidationBus(),
+                5_000,
+                100,
+                1_000,
+                50
+        );
+    }
+
+    /**
+     * Boots the application on the test profile (H2 seeded from data.sql) without the web
+     * server and with method logging quietened, so results reflect the service and database.
+     *
+     * Everything is passed as command line arguments: default properties rank below the profile
+     * files, so show-sql or a setting such as group-commit.enabled given there would be ignored.
+     */
+    static ConfigurableApplicationContext bootH2(String... properties) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=warn",
+                "--logging.level.my.project.util.LoggingAspect=warn"
+        ));
+
+        for (String property : properties)
+            args.add("--" + property);
+
+        return new SpringApplicationBuilder(UserServiceDriver.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .run(args.toArray(new String[0]));
+    }
+
+}
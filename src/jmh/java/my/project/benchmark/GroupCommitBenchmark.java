@@ -0,0 +1,49 @@
+package my.project.benchmark;
+
+import my.project.entity.dtos.UserResponse;
+import my.project.web.UserService;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent single creates against H2, each in its own transaction or gathered into group
+ * commits. Only meaningful with several threads, a lone caller just waits out max-wait.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g", "-XX:+UseG1GC" })
+@Threads(16)
+public class GroupCommitBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean groupCommit;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+
+    private final AtomicLong names = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        context = Benchmarks.bootH2("user-service.group-commit.enabled=" + groupCommit);
+        userService = context.getBean(UserService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserResponse addUser() {
+        return userService.addUser("group_" + names.incrementAndGet());
+    }
+
+}
@@ -0,0 +1,199 @@
+package my.project.benchmark;
+
+import my.project.entity.User;
+import my.project.entity.dtos.UserResponse;
+import my.project.web.UserRepository;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Map backed stand-in for the JPA repository, so service benchmarks can be run without the
+ * database cost. Only the methods UserService calls are implemented, anything else throws.
+ */
+final class InMemoryUserRepository implements InvocationHandler {
+
+    private final ConcurrentMap<Long, User> byId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> byName = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    static UserRepository create(int seedUsers) {
+        InMemoryUserRepository handler = new InMemoryUserRepository();
+
+        for (int i = 1; i <= seedUsers; i++)
+            handler.insert(new User("test" + i));
+
+        return (UserRepository) Proxy.newProxyInstance(
+                UserRepository.class.getClassLoader(),
+                new Class<?>[] { UserRepository.class },
+                handler
+        );
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "findByUsername":
+                return Optional.ofNullable(byName.get((String) args[0])).map(byId::get);
+
+            case "existsByUsername":
+                return byName.containsKey((String) args[0]);
+
+            case "findById":
+                return Optional.ofNullable(byId.get((Long) args[0]));
+
+            case "findResponseById":
+                return Optional.ofNullable(byId.get((Long) args[0])).map(UserResponse::new);
+
+            case "findPageAfter":
+            case "findVersionedPageAfter":
+                return pageAfter((Long) args[0], ((Pageable) args[1]).getPageSize());
+
+            case "findByUsernamePrefix":
+                return byPrefix((String) args[0], ((Pageable) args[1]).getPageSize());
+
+            case "streamBetween":
+                return pageAfter((Long) args[0], Integer.MAX_VALUE).stream()
+                        .filter(user -> user.getUserID() < (Long) args[1]);
+
+            case "findExistingUsernames":
+                return existing((Collection<?>) args[0]);
+
+            case "save":
+            case "saveAndFlush":
+                return insert((User) args[0]);
+
+            case "saveAll":
+                return insertAll((Iterable<?>) args[0]);
+
+            case "findVersionById":
+                return Optional.ofNullable(byId.get((Long) args[0])).map(User::getVersion);
+
+            case "existsById":
+                return byId.containsKey((Long) args[0]);
+
+            case "updateUsernameIfVersion":
+                return updateUsername((Long) args[0], (String) args[1], (Long) args[2]);
+
+            case "deleteUserById":
+                return deleteUserById((Long) args[0]);
+
+            case "flush":
+                return null;
+
+            case "hashCode":
+                return System.identityHashCode(proxy);
+
+            case "equals":
+                return proxy == args[0];
+
+            case "toString":
+                return "InMemoryUserRepository";
+
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    // shaped like the translated H2 error, UserService only treats this constraint as a conflict
+    private static DataIntegrityViolationException usernameTaken() {
+        return new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("Unique index or primary key violation", null, User.USERNAME_CONSTRAINT));
+    }
+
+    private User insert(User user) {
+        long id = ids.incrementAndGet();
+
+        if (byName.putIfAbsent(user.getUsername(), id) != null)
+            throw usernameTaken();
+
+        User saved = new User(id, user.getUsername(), 0L);
+        byId.put(id, saved);
+
+        return saved;
+    }
+
+    private List<User> insertAll(Iterable<?> users) {
+        List<User> saved = new ArrayList<>();
+
+        for (Object user : users)
+            saved.add(insert((User) user));
+
+        return saved;
+    }
+
+    private List<UserResponse> pageAfter(Long after, int limit) {
+        List<UserResponse> page = new ArrayList<>();
+
+        byId.keySet().stream()
+                .filter(id -> id > after)
+                .sorted()
+                .limit(limit)
+                .forEach(id -> page.add(new UserResponse(byId.get(id))));
+
+        return page;
+    }
+
+    // prefix arrives LIKE escaped, benchmark names never contain wildcards so it is used as is
+    private List<UserResponse> byPrefix(String prefix, int limit) {
+        List<UserResponse> matches = new ArrayList<>();
+
+        byName.keySet().stream()
+                .filter(username -> username.startsWith(prefix))
+                .sorted()
+                .limit(limit)
+                .forEach(username -> matches.add(new UserResponse(byName.get(username), username)));
+
+        return matches;
+    }
+
+    private List<String> existing(Collection<?> usernames) {
+        List<String> found = new ArrayList<>();
+
+        for (Object username : usernames) {
+            if (byName.containsKey((String) username))
+                found.add((String) username);
+        }
+
+        return found;
+    }
+
+    private int updateUsername(Long userID, String username, Long expectedVersion) {
+        User current = byId.get(userID);
+
+        if (current == null || (expectedVersion != null && !expectedVersion.equals(current.getVersion())))
+            return 0;
+
+        Long owner = byName.putIfAbsent(username, userID);
+        if (owner != null && !owner.equals(userID))
+            throw usernameTaken();
+
+        if (!current.getUsername().equals(username))
+            byName.remove(current.getUsername(), userID);
+
+        byId.put(userID, new User(userID, username, current.getVersion() + 1));
+
+        return 1;
+    }
+
+    private int deleteUserById(Long userID) {
+        User removed = byId.remove(userID);
+
+        if (removed == null)
+            return 0;
+
+        byName.remove(removed.getUsername(), userID);
+
+        return 1;
+    }
+
+}
@@ -0,0 +1,48 @@
+package my.project.benchmark;
+
+import my.project.web.UserRepository;
+import my.project.web.UserService;
+import my.project.util.exception.exceptions.UserNotFoundException;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reporting a missing user by throwing UserNotFoundException compared with returning
+ * an empty Optional from the same lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g", "-XX:+UseG1GC" })
+public class NotFoundBenchmark {
+
+    private static final Long MISSING_ID = -1L;
+
+    private UserRepository userRepo;
+    private UserService userService;
+
+    @Setup
+    public void setUp() {
+        userRepo = InMemoryUserRepository.create(Benchmarks.SEED_USERS);
+        userService = Benchmarks.inMemoryUserService(userRepo);
+    }
+
+    @Benchmark
+    public Object notFound_exception() {
+        try {
+            return userService.getUserById(MISSING_ID);
+        } catch (UserNotFoundException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object notFound_optional() {
+        return userRepo.findResponseById(MISSING_ID).orElse(null);
+    }
+
+}
@@ -0,0 +1,61 @@
+package my.project.benchmark;
+
+import my.project.entity.dtos.UserResponse;
+import my.project.web.UserRepository;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The reads UserService makes, through a managed entity (how they were made before) and through
+ * the read-only projections, against H2. Meant to be run with {@code -prof gc}, the difference
+ * is mostly in what each query allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g", "-XX:+UseG1GC" })
+public class ProjectionBenchmark {
+
+    private static final Long USER_ID = 1L;
+    private static final String TAKEN_NAME = "test1";
+
+    private ConfigurableApplicationContext context;
+    private UserRepository userRepo;
+
+    @Setup
+    public void setUp() {
+        context = Benchmarks.bootH2();
+        userRepo = context.getBean(UserRepository.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserResponse getUserById_entity() {
+        return new UserResponse(userRepo.findById(USER_ID).orElseThrow());
+    }
+
+    @Benchmark
+    public UserResponse getUserById_projection() {
+        return userRepo.findResponseById(USER_ID).orElseThrow();
+    }
+
+    @Benchmark
+    public boolean usernameTaken_entity() {
+        return userRepo.findByUsername(TAKEN_NAME).isPresent();
+    }
+
+    @Benchmark
+    public boolean usernameTaken_exists() {
+        return userRepo.existsByUsername(TAKEN_NAME);
+    }
+
+}
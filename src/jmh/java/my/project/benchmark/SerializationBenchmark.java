@@ -0,0 +1,101 @@
+package my.project.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import my.project.entity.dtos.UserResponse;
+import my.project.util.exception.ExceptionResponse;
+import my.project.util.exception.exceptions.UserNotFoundException;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson encode / decode of the two payloads every endpoint returns, in each format the
+ * service negotiates, configured like the application's ObjectMapper.
+ *
+ * Payload sizes are not part of the JMH output, {@link #main} prints them once per format:
+ * {@code java -cp <benchmark classpath> my.project.benchmark.SerializationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g", "-XX:+UseG1GC" })
+public class SerializationBenchmark {
+
+    @Param({ "json", "cbor", "smile" })
+    public String format;
+
+    private ObjectMapper mapper;
+
+    private UserResponse user;
+    private ExceptionResponse error;
+
+    private byte[] userBytes;
+    private byte[] errorBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = mapper(format);
+
+        user = new UserResponse(1L, "test1");
+        error = new ExceptionResponse(404, new UserNotFoundException());
+
+        userBytes = mapper.writeValueAsBytes(user);
+        errorBytes = mapper.writeValueAsBytes(error);
+    }
+
+    public static void main(String[] args) throws IOException {
+        for (String format : new String[] { "json", "cbor", "smile" }) {
+            SerializationBenchmark payloads = new SerializationBenchmark();
+            payloads.format = format;
+            payloads.setUp();
+
+            System.out.printf("%s payload bytes: UserResponse=%d, ExceptionResponse=%d%n",
+                    format, payloads.userBytes.length, payloads.errorBytes.length);
+        }
+    }
+
+    private static ObjectMapper mapper(String format) {
+        return builder(format)
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+    }
+
+    private static Jackson2ObjectMapperBuilder builder(String format) {
+        switch (format) {
+            case "cbor":
+                return Jackson2ObjectMapperBuilder.cbor();
+            case "smile":
+                return Jackson2ObjectMapperBuilder.smile();
+            default:
+                return Jackson2ObjectMapperBuilder.json();
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeUserResponse() throws IOException {
+        return mapper.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public UserResponse decodeUserResponse() throws IOException {
+        return mapper.readValue(userBytes, UserResponse.class);
+    }
+
+    @Benchmark
+    public byte[] encodeExceptionResponse() throws IOException {
+        return mapper.writeValueAsBytes(error);
+    }
+
+    @Benchmark
+    public ExceptionResponse decodeExceptionResponse() throws IOException {
+        return mapper.readValue(errorBytes, ExceptionResponse.class);
+    }
+
+}
@@ -0,0 +1,83 @@
+package my.project.benchmark;
+
+import my.project.entity.dtos.BulkCreateResult;
+import my.project.entity.dtos.UserPage;
+import my.project.entity.dtos.UserResponse;
+import my.project.web.UserService;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput over 1 to 4 H2 databases configured as shards. One shard goes through the same
+ * sharded DataSource setup with nothing to route, so the runs differ only in the shard count.
+ * Creates spread over the shards by name, a bulk create commits on every shard in parallel and
+ * a page of the listing has to ask all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g", "-XX:+UseG1GC" })
+@Threads(16)
+public class ShardScalingBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({ "1", "2", "4" })
+    public int shards;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+
+    private final AtomicLong names = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        List<String> properties = new ArrayList<>();
+        properties.add("spring.sql.init.mode=never");
+
+        for (int shard = 0; shard < shards; shard++)
+            properties.add("user-service.sharding.shards[" + shard + "].url=jdbc:h2:mem:bench_shard" + shard + ";DB_CLOSE_DELAY=-1");
+
+        context = Benchmarks.bootH2(properties.toArray(new String[0]));
+        userService = context.getBean(UserService.class);
+
+        List<String> seed = new ArrayList<>(Benchmarks.SEED_USERS);
+        for (int i = 0; i < Benchmarks.SEED_USERS; i++)
+            seed.add("shard_seed_" + i);
+
+        userService.addUsers(seed);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserResponse addUser() {
+        return userService.addUser("shard_" + names.incrementAndGet());
+    }
+
+    @Benchmark
+    public List<BulkCreateResult> addUsers() {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++)
+            batch.add("shard_bulk_" + names.incrementAndGet());
+
+        return userService.addUsers(batch);
+    }
+
+    @Benchmark
+    public UserPage listUsers() {
+        return userService.listUsers(null, 100);
+    }
+
+}
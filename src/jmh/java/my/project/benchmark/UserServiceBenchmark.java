@@ -0,0 +1,102 @@
+package my.project.benchmark;
+
+import my.project.entity.dtos.BulkCreateResult;
+import my.project.entity.dtos.UpdateUserRequest;
+import my.project.entity.dtos.UserResponse;
+import my.project.web.UserService;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UserService operations against the in memory repository (service overhead only) and
+ * against H2 through the full Spring context (service plus JPA and JDBC).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g", "-XX:+UseG1GC" })
+public class UserServiceBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({ "memory", "h2" })
+    public String backend;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+
+    private final AtomicLong names = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        if ("h2".equals(backend)) {
+            context = Benchmarks.bootH2();
+            userService = context.getBean(UserService.class);
+        } else {
+            userService = Benchmarks.inMemoryUserService(InMemoryUserRepository.create(Benchmarks.SEED_USERS));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (context != null)
+            context.close();
+    }
+
+    @Benchmark
+    public UserResponse getUserById() {
+        return userService.getUserById(1L);
+    }
+
+    @Benchmark
+    public boolean checkUsernameAvailability_taken() {
+        return userService.checkUsernameAvailability("test1");
+    }
+
+    @Benchmark
+    public boolean checkUsernameAvailability_free() {
+        return userService.checkUsernameAvailability("never_registered");
+    }
+
+    @Benchmark
+    public List<UserResponse> searchUsernames() {
+        return userService.searchUsernames("test1", 10);
+    }
+
+    @Benchmark
+    public UserResponse addUser() {
+        return userService.addUser("bench_" + names.incrementAndGet());
+    }
+
+    /**
+     * Same work as {@link #addUser()} per created user, scores are directly comparable.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<BulkCreateResult> addUsers() {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+
+        for (int i = 0; i < BATCH_SIZE; i++)
+            batch.add("bench_" + names.incrementAndGet());
+
+        return userService.addUsers(batch);
+    }
+
+    @Benchmark
+    public UserResponse updateUser() {
+        UpdateUserRequest req = new UpdateUserRequest();
+        req.setUserID(2L);
+        req.setUsername("renamed_" + names.incrementAndGet());
+
+        return userService.updateUser(req);
+    }
+
+}
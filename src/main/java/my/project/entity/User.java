@@ -2,24 +2,49 @@ package my.project.entity;
 
 import lombok.*;
 
+import org.hibernate.annotations.GenericGenerator;
+
 import javax.persistence.*;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity(name="USER")
+@Table(
+        name="USER",
+        uniqueConstraints = @UniqueConstraint(name=User.USERNAME_CONSTRAINT, columnNames="username"),
+        // covers the keyset listing (seek on user_id, read username) without touching the table
+        indexes = @Index(name="ix_user_id_username", columnList="user_id, username")
+)
 public class User {
 
+    public static final String USERNAME_CONSTRAINT = "uk_user_username";
+
+    public static final int MAX_USERNAME_LENGTH = 255;
+
+    // assigned in memory by the IdAllocator bean (time ordered, unique per node), so there is
+    // no round trip per id and hibernate can batch the inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "user_id")
+    @GenericGenerator(name = "user_id", strategy = "my.project.util.id.AllocatedIdGenerator")
     @Column(name="user_id")
     private Long userID;
 
-    @Column(name="username")
+    @Column(name="username", length = MAX_USERNAME_LENGTH)
     private String username;
 
+    // bumped by every write, also served as the ETag of the user
+    @Version
+    @Column(name="version")
+    private Long version;
+
     public User(String username) {
         this.username = username;
     }
 
+    public User(Long userID, String username) {
+        this.userID = userID;
+        this.username = username;
+    }
+
 }
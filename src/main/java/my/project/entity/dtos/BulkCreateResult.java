@@ -0,0 +1,29 @@
+package my.project.entity.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkCreateResult {
+
+    public enum Status {
+        CREATED,
+        CONFLICT
+    }
+
+    private String username;
+    private Long userID;
+    private Status status;
+
+    public static BulkCreateResult created(UserResponse user) {
+        return new BulkCreateResult(user.getUsername(), user.getUserID(), Status.CREATED);
+    }
+
+    public static BulkCreateResult conflict(String username) {
+        return new BulkCreateResult(username, null, Status.CONFLICT);
+    }
+
+}
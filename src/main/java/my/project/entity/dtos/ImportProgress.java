@@ -0,0 +1,23 @@
+package my.project.entity.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Running totals of an import, sent after every chunk and once more with complete set when
+ * the whole upload has been read.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportProgress {
+
+    private long rows;
+    private long created;
+    private long conflicts;
+    private long invalid;
+    private long failed;
+    private boolean complete;
+
+}
@@ -0,0 +1,31 @@
+package my.project.entity.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A row of an import that did not create a user, {@code row} is the 1 based line number in
+ * the upload.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportRowError {
+
+    public enum Reason {
+        /** taken in the database or earlier in the same upload */
+        CONFLICT,
+        BLANK,
+        /** longer than a username can be */
+        TOO_LONG,
+        MALFORMED,
+        /** the chunk holding the row could not be written, it was not created and can be sent again */
+        FAILED
+    }
+
+    private long row;
+    private String username;
+    private Reason error;
+
+}
@@ -0,0 +1,21 @@
+package my.project.entity.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of users in userID order. Pass {@code nextCursor} back as {@code after} to read the
+ * following page, it is null once the last page has been returned.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserPage {
+
+    private List<UserResponse> users;
+    private Long nextCursor;
+
+}
@@ -1,5 +1,8 @@
 package my.project.entity.dtos;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -7,14 +10,25 @@ import my.project.entity.User;
 
 @Data
 @NoArgsConstructor
+@AllArgsConstructor
 public class UserResponse {
 
     private Long userID;
     private String username;
 
+    // sent as the ETag header rather than in the body, null when the read did not select it
+    @JsonIgnore
+    private Long version;
+
+    public UserResponse(Long userID, String username) {
+        this.userID = userID;
+        this.username = username;
+    }
+
     public UserResponse(User user) {
         this.userID = user.getUserID();
         this.username = user.getUsername();
+        this.version = user.getVersion();
     }
 
 }
@@ -1,13 +1,28 @@
 package my.project.util;
 
+import io.prometheus.client.CollectorRegistry;
+
+import my.project.util.logging.BoundedValue;
+import my.project.util.logging.DroppingAsyncAppender;
+import my.project.util.logging.LogSampling;
+import my.project.util.logging.LoggingProperties;
+import my.project.util.metrics.CollectMetrics;
+
 import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.*;
 
+import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Aspect
 @Component
@@ -15,36 +30,109 @@ public class LoggingAspect {
 
     private final Logger logger = LoggerFactory.getLogger("my.project.util.LoggingAspect");
 
-    @Pointcut("within(my.project..*)")
+    private final LoggingProperties properties;
+
+    // resolved once per method, so the hot path is a map lookup instead of reflection
+    private final Map<Method, MethodLogging> methods = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LoggingAspect(LoggingProperties properties, CollectorRegistry collectorRegistry) {
+        this.properties = properties;
+        collectorRegistry.register(DroppingAsyncAppender.DROPPED_EVENTS);
+    }
+
+    @Pointcut("within(my.project.web..*)")
     public void logAll(){}
 
-    @Before("logAll()")
-    public void logMethodStart(JoinPoint jp) {
-        String signature = extractMethodSignature(jp);
-        String args = Arrays.toString(jp.getArgs());
+    @Around("logAll()")
+    public Object logMethod(ProceedingJoinPoint jp) throws Throwable {
 
-        logger.debug("{} invoked with provided arguments: {}",
-                signature, args);
+        if (!logger.isDebugEnabled())
+            return jp.proceed();
+
+        MethodLogging method = resolve(jp);
+
+        // an endpoint decides for the whole request, everything it calls follows that decision
+        if (method.endPoint) {
+            boolean sampled = method.sampled();
+            Boolean previous = LogSampling.bind(sampled);
+
+            try {
+                return sampled ? logAndProceed(jp, method) : jp.proceed();
+            } finally {
+                LogSampling.restore(previous);
+            }
+        }
+
+        Boolean requestSampled = LogSampling.current();
+
+        if (requestSampled == null ? !method.sampled() : !requestSampled)
+            return jp.proceed();
+
+        return logAndProceed(jp, method);
     }
 
-    @AfterReturning(pointcut = "logAll()", returning = "returned")
-    public void logMethodReturn(JoinPoint jp, Object returned) {
-        String signature = extractMethodSignature(jp);
+    private Object logAndProceed(ProceedingJoinPoint jp, MethodLogging method) throws Throwable {
+
+        logger.debug("{} invoked with provided arguments: {}",
+                method.signature, bounded(jp.getArgs()));
+
+        Object returned = jp.proceed();
+
+        // failures of asynchronous work are logged by logExceptionThrown on the service call itself
+        if (returned instanceof CompletionStage)
+            ((CompletionStage<?>) returned).thenAccept(value -> logReturned(method, value));
+        else
+            logReturned(method, returned);
+
+        return returned;
+    }
 
+    private void logReturned(MethodLogging method, Object returned) {
         logger.debug("{} successfully returned with value: {}",
-                signature, returned);
+                method.signature, bounded(returned));
     }
 
     @AfterThrowing(pointcut = "logAll()", throwing = "t")
     public void logExceptionThrown(JoinPoint jp, Throwable t) {
-        String signature = extractMethodSignature(jp);
-        String exceptionName = t.getClass().getSimpleName();
+
+        if (!logger.isWarnEnabled())
+            return;
 
         logger.warn("{} was thrown from {} with message: {}",
-                exceptionName, signature, t.getMessage());
+                t.getClass().getSimpleName(), resolve(jp).signature, t.getMessage());
+    }
+
+    private BoundedValue bounded(Object value) {
+        return new BoundedValue(value, properties.getMaxValueLength(), properties.getMaxElements());
     }
 
-    private String extractMethodSignature(JoinPoint jp) {
-        return jp.getTarget().getClass().getSimpleName() + "#" + jp.getSignature().getName();
+    private MethodLogging resolve(JoinPoint jp) {
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        MethodLogging resolved = methods.get(method);
+
+        if (resolved == null)
+            resolved = methods.computeIfAbsent(method, m -> new MethodLogging(jp, m));
+
+        return resolved;
+    }
+
+    private final class MethodLogging {
+
+        private final String signature;
+        private final boolean endPoint;
+        private final double sampleRate;
+
+        private MethodLogging(JoinPoint jp, Method method) {
+            CollectMetrics endPoint = method.getAnnotation(CollectMetrics.class);
+
+            this.signature = jp.getTarget().getClass().getSimpleName() + "#" + method.getName();
+            this.endPoint = endPoint != null;
+            this.sampleRate = properties.sampleRateFor(endPoint == null ? null : endPoint.endPoint());
+        }
+
+        private boolean sampled() {
+            return sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        }
     }
 }
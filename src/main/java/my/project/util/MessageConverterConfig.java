@@ -0,0 +1,41 @@
+package my.project.util;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Adds CBOR (application/cbor) and Smile (application/x-jackson-smile) for request and
+ * response bodies, error bodies included. They are appended after the JSON converter, so JSON
+ * stays the answer to any Accept header that does not ask for a binary format by name.
+ */
+@Configuration
+public class MessageConverterConfig implements WebMvcConfigurer {
+
+    private final Jackson2ObjectMapperBuilder mapperBuilder;
+
+    // Boot's builder, so the binary mappers share the JSON mapper's modules and features
+    @Autowired
+    public MessageConverterConfig(Jackson2ObjectMapperBuilder mapperBuilder) {
+        this.mapperBuilder = mapperBuilder;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new MappingJackson2CborHttpMessageConverter(
+                mapperBuilder.factory(new CBORFactory()).build()));
+
+        converters.add(new MappingJackson2SmileHttpMessageConverter(
+                mapperBuilder.factory(new SmileFactory()).build()));
+    }
+
+}
@@ -0,0 +1,127 @@
+package my.project.util.async;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
+import my.project.util.exception.exceptions.ServiceUnavailableException;
+import my.project.util.logging.LogSampling;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs service calls off the servlet thread on a fixed pool sized to the connection pool, so
+ * there are never more threads waiting on JDBC than there are connections. Work beyond the
+ * queue capacity is rejected immediately with {@link ServiceUnavailableException} rather than
+ * left to pile up behind a slow database.
+ *
+ * The request's debug log sampling decision ({@link LogSampling}) goes along with each call.
+ *
+ * With {@code user-service.async.enabled=false} calls run inline on the calling thread.
+ */
+@Component
+public class UserServiceExecutor {
+
+    private final boolean enabled;
+    private final ThreadPoolExecutor executor;
+
+    private final Histogram queueWaitHistogram;
+    private final Counter rejectedCount;
+
+    @Autowired
+    public UserServiceExecutor(CollectorRegistry collectorRegistry,
+                               @Value("${user-service.async.enabled:true}") boolean enabled,
+                               @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                               @Value("${user-service.async.queue-capacity:100}") int queueCapacity) {
+
+        this.enabled = enabled;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "user-service-" + threads.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        queueWaitHistogram = Histogram.build()
+                .name("user_service_executor_queue_wait_seconds")
+                .help("Time service calls spent queued before a worker picked them up")
+                .buckets(0.0001, 0.0005, 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5)
+                .register(collectorRegistry);
+
+        rejectedCount = Counter.build()
+                .name("user_service_executor_rejected_count")
+                .help("Service calls rejected with 503 because the executor queue was full")
+                .register(collectorRegistry);
+
+        Gauge.build()
+                .name("user_service_executor_utilization")
+                .help("Fraction of service workers currently busy")
+                .register(collectorRegistry)
+                .setChild(new Gauge.Child() {
+                    @Override
+                    public double get() {
+                        return (double) executor.getActiveCount() / executor.getMaximumPoolSize();
+                    }
+                });
+
+        Gauge.build()
+                .name("user_service_executor_queue_depth")
+                .help("Service calls waiting for a worker")
+                .register(collectorRegistry)
+                .setChild(new Gauge.Child() {
+                    @Override
+                    public double get() {
+                        return executor.getQueue().size();
+                    }
+                });
+    }
+
+    /**
+     * @throws ServiceUnavailableException when the queue is full, before any work is started
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+
+        if (!enabled)
+            return CompletableFuture.completedFuture(task.get());
+
+        long queued = System.nanoTime();
+        Supplier<T> sampled = LogSampling.capture(task);
+
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                queueWaitHistogram.observe((System.nanoTime() - queued) / Collector.NANOSECONDS_PER_SECOND);
+                return sampled.get();
+            }, executor);
+
+        } catch (RejectedExecutionException e) {
+            rejectedCount.inc();
+            throw new ServiceUnavailableException();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+}
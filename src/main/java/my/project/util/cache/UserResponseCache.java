@@ -0,0 +1,149 @@
+package my.project.util.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.cache.caffeine.CacheMetricsCollector;
+
+import my.project.entity.dtos.UserResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through near cache of user responses keyed by userID, evicting by size
+ * (W-TinyLFU) and by time since write. Kept coherent across instances by the invalidations
+ * the service receives over its InvalidationBus.
+ *
+ * Loads run atomically per key, so an invalidation issued while a load is in flight waits
+ * for the load and then removes its result. Every invalidation also leaves a tombstone for a
+ * while: a load that started before the invalidation arrived is only cached if it read at
+ * least the invalidated version, and an invalidation for a version older than the cached one
+ * is ignored. Late or reordered invalidations therefore never put an older user back.
+ */
+@Component
+public class UserResponseCache {
+
+    private final Cache<Long, UserResponse> cache;
+    private final Cache<Long, Tombstone> tombstones;
+
+    private final Histogram coherenceLag;
+    private final Counter staleInvalidations;
+
+    @Autowired
+    public UserResponseCache(CollectorRegistry collectorRegistry,
+                             @Value("${user-service.user-cache.maximum-size:10000}") long maximumSize,
+                             @Value("${user-service.user-cache.time-to-live:10m}") Duration timeToLive,
+                             @Value("${user-service.user-cache.tombstone-time-to-live:1m}") Duration tombstoneTimeToLive) {
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+
+        this.tombstones = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(tombstoneTimeToLive)
+                .build();
+
+        CacheMetricsCollector cacheMetrics = new CacheMetricsCollector().register(collectorRegistry);
+        cacheMetrics.addCache("user_response", cache);
+
+        coherenceLag = Histogram.build()
+                .name("user_cache_coherence_lag_seconds")
+                .help("Time from another instance committing a user change to this cache dropping it")
+                .buckets(0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10)
+                .register(collectorRegistry);
+
+        staleInvalidations = Counter.build()
+                .name("user_cache_stale_invalidation_count")
+                .help("Invalidations ignored because the cached user was already newer")
+                .register(collectorRegistry);
+    }
+
+    /**
+     * Returns the cached response or loads it, {@code loader} may return null when the user
+     * does not exist, in which case nothing is cached. A load that a tombstone rules out is
+     * still returned to this caller, it is only not cached.
+     */
+    public UserResponse get(Long userID, Function<Long, UserResponse> loader) {
+        long started = System.nanoTime();
+        UserResponse[] loaded = new UserResponse[1];
+
+        UserResponse cached = cache.asMap().computeIfAbsent(userID, id -> {
+            loaded[0] = loader.apply(id);
+            return loaded[0] != null && admits(id, loaded[0], started) ? loaded[0] : null;
+        });
+
+        return cached != null ? cached : loaded[0];
+    }
+
+    public UserResponse getIfPresent(Long userID) {
+        return cache.getIfPresent(userID);
+    }
+
+    /**
+     * Drops the user unless the cached copy is already at {@code version} or later. A null
+     * version is a change of unknown version and always drops, {@link Long#MAX_VALUE} marks a
+     * delete. No version reaches it, so a load that was already running when the delete arrived
+     * is never cached; a load started after it is admitted like any other, and only finds the
+     * user if the id was written again.
+     */
+    public void invalidate(Long userID, Long version) {
+        Tombstone tombstone = new Tombstone(version, System.nanoTime());
+        tombstones.asMap().merge(userID, tombstone, Tombstone::merge);
+
+        cache.asMap().computeIfPresent(userID, (id, cached) -> {
+            if (version != null && cached.getVersion() != null && cached.getVersion() >= version) {
+                staleInvalidations.inc();
+                return cached;
+            }
+
+            return null;
+        });
+    }
+
+    public void recordCoherenceLag(long publishedAtMillis) {
+        coherenceLag.observe(Math.max(0, System.currentTimeMillis() - publishedAtMillis) / 1000.0);
+    }
+
+    private boolean admits(Long userID, UserResponse loaded, long loadStarted) {
+        Tombstone tombstone = tombstones.getIfPresent(userID);
+
+        return tombstone == null
+                || loadStarted - tombstone.sinceNanos > 0
+                || (tombstone.minVersion != null && loaded.getVersion() != null && loaded.getVersion() >= tombstone.minVersion);
+    }
+
+    private static final class Tombstone {
+
+        // oldest version a load that started before sinceNanos may cache, null admits none
+        private final Long minVersion;
+        private final long sinceNanos;
+
+        private Tombstone(Long minVersion, long sinceNanos) {
+            this.minVersion = minVersion;
+            this.sinceNanos = sinceNanos;
+        }
+
+        /**
+         * The later tombstone wins, an unknown version in it must not be weakened by a known
+         * version from before.
+         */
+        private static Tombstone merge(Tombstone earlier, Tombstone later) {
+            Long minVersion = later.minVersion == null || earlier.minVersion == null
+                    ? later.minVersion
+                    : Long.valueOf(Math.max(earlier.minVersion, later.minVersion));
+
+            return new Tombstone(minVersion, Math.max(earlier.sinceNanos, later.sinceNanos));
+        }
+    }
+
+}
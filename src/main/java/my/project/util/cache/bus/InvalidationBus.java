@@ -0,0 +1,19 @@
+package my.project.util.cache.bus;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries {@link UserChangeEvent}s between the instances of the service, so each one can drop
+ * what it has cached about a user another instance changed.
+ *
+ * Transports may deliver late, more than once or out of order, receivers rely on the event
+ * versions rather than on delivery order. An event should reach every subscriber of every
+ * instance, including the one that published it, which skips its own events by origin.
+ */
+public interface InvalidationBus {
+
+    void publish(UserChangeEvent event);
+
+    void subscribe(Consumer<UserChangeEvent> subscriber);
+
+}
@@ -0,0 +1,32 @@
+package my.project.util.cache.bus;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers events synchronously to subscribers in the same JVM. Enough for a single instance,
+ * and lets tests run several services against one bus. Select another transport with
+ * {@code user-service.invalidation-bus.type}.
+ */
+@Component
+@ConditionalOnProperty(name = "user-service.invalidation-bus.type", havingValue = "loopback", matchIfMissing = true)
+public class LoopbackInvalidationBus implements InvalidationBus {
+
+    private final List<Consumer<UserChangeEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(UserChangeEvent event) {
+        for (Consumer<UserChangeEvent> subscriber : subscribers)
+            subscriber.accept(event);
+    }
+
+    @Override
+    public void subscribe(Consumer<UserChangeEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+}
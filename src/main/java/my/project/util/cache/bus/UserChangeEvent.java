@@ -0,0 +1,36 @@
+package my.project.util.cache.bus;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A committed change to one user, as published on the {@link InvalidationBus}. Plain fields
+ * only, so any transport can carry it as JSON.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserChangeEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private Type type;
+    private Long userID;
+
+    /** the name after the change, null for a delete */
+    private String username;
+
+    /** version the change produced, null when the writer does not know it */
+    private Long version;
+
+    /** instance that made the change, it has already applied the change locally */
+    private String origin;
+
+    private long publishedAtMillis;
+
+}
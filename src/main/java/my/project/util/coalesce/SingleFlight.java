@@ -0,0 +1,133 @@
+package my.project.util.coalesce;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Folds concurrent calls for the same key into one: the first caller runs the query, everyone
+ * arriving while it runs waits for and returns the same result, or rethrows the same exception.
+ *
+ * Writers call {@link #forget} once their change is committed, so nobody arriving after the
+ * write joins a query that may have read the old row. {@link #forgetAll} does the same for
+ * writes that cannot name the keys they affect.
+ */
+public class SingleFlight<K, V> {
+
+    private final boolean enabled;
+
+    private final Counter.Child queryCount;
+    private final Counter.Child coalescedCount;
+    private final Histogram.Child callersHistogram;
+
+    private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    SingleFlight(boolean enabled, Counter.Child queryCount, Counter.Child coalescedCount, Histogram.Child callersHistogram) {
+        this.enabled = enabled;
+        this.queryCount = queryCount;
+        this.coalescedCount = coalescedCount;
+        this.callersHistogram = callersHistogram;
+    }
+
+    public V execute(K key, Function<K, V> query) {
+
+        if (!enabled)
+            return query.apply(key);
+
+        Flight<V> flight = new Flight<>(generation.get());
+
+        while (true) {
+            Flight<V> existing = flights.putIfAbsent(key, flight);
+
+            if (existing == null)
+                break;
+
+            if (existing.generation == flight.generation && existing.tryJoin()) {
+                coalescedCount.inc();
+                return existing.await();
+            }
+
+            // started before a forgetAll, or already done, either way it is not ours to share
+            if (flights.replace(key, existing, flight))
+                break;
+        }
+
+        queryCount.inc();
+
+        try {
+            V value = query.apply(key);
+            flight.complete(value);
+            return value;
+
+        } catch (Throwable t) {
+            flight.completeExceptionally(t);
+            throw t;
+
+        } finally {
+            flights.remove(key, flight);
+            callersHistogram.observe(flight.close());
+
+        }
+    }
+
+    public void forget(K key) {
+        flights.remove(key);
+    }
+
+    public void forgetAll() {
+        generation.incrementAndGet();
+    }
+
+    private static final class Flight<V> extends CompletableFuture<V> {
+
+        private final long generation;
+
+        // callers sharing this flight, -1 once closed to new ones
+        private final AtomicInteger callers = new AtomicInteger(1);
+
+        private Flight(long generation) {
+            this.generation = generation;
+        }
+
+        private boolean tryJoin() {
+            while (true) {
+                int current = callers.get();
+
+                if (current < 0)
+                    return false;
+
+                if (callers.compareAndSet(current, current + 1))
+                    return true;
+            }
+        }
+
+        private int close() {
+            return callers.getAndSet(-1);
+        }
+
+        private V await() {
+            try {
+                return join();
+
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+
+                throw e;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package my.project.util.coalesce;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the {@link SingleFlight}s used by the service, each labelled by name in the shared
+ * coalescing metrics. With {@code user-service.coalescing.enabled=false} every call runs its
+ * own query.
+ */
+@Component
+public class SingleFlights {
+
+    private final boolean enabled;
+
+    private final Counter queryCount;
+    private final Counter coalescedCount;
+    private final Histogram callersHistogram;
+
+    @Autowired
+    public SingleFlights(CollectorRegistry collectorRegistry,
+                         @Value("${user-service.coalescing.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+
+        queryCount = Counter.build()
+                .name("single_flight_query_count")
+                .help("Queries actually run on behalf of coalesced reads")
+                .labelNames("flight")
+                .register(collectorRegistry);
+
+        coalescedCount = Counter.build()
+                .name("single_flight_coalesced_count")
+                .help("Reads answered by joining a query another caller already had in flight")
+                .labelNames("flight")
+                .register(collectorRegistry);
+
+        callersHistogram = Histogram.build()
+                .name("single_flight_callers")
+                .help("Callers served by each query, 1 when nothing was coalesced")
+                .labelNames("flight")
+                .buckets(1, 2, 5, 10, 25, 50, 100, 250, 500)
+                .register(collectorRegistry);
+    }
+
+    public <K, V> SingleFlight<K, V> create(String name) {
+        return new SingleFlight<>(
+                enabled,
+                queryCount.labels(name),
+                coalescedCount.labels(name),
+                callersHistogram.labels(name)
+        );
+    }
+
+}
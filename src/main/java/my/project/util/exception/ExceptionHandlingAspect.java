@@ -1,17 +1,31 @@
 package my.project.util.exception;
 
 import my.project.util.exception.exceptions.DuplicateUsernameException;
-import my.project.util.exception.exceptions.InvalidMetricsConfigurationException;
+import my.project.util.exception.exceptions.InvalidRequestException;
+import my.project.util.exception.exceptions.PreconditionFailedException;
+import my.project.util.exception.exceptions.ServiceUnavailableException;
+import my.project.util.exception.exceptions.TooManyRequestsException;
 import my.project.util.exception.exceptions.UserNotFoundException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import javax.servlet.http.HttpServletResponse;
+
 @RestControllerAdvice
 public class ExceptionHandlingAspect {
 
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler({
+            InvalidRequestException.class
+    })
+    public ExceptionResponse invalidRequestHandler(Exception e) {
+        return new ExceptionResponse(400, e);
+    }
+
     @ResponseStatus(HttpStatus.CONFLICT)
     @ExceptionHandler({
             DuplicateUsernameException.class
@@ -28,12 +42,12 @@ public class ExceptionHandlingAspect {
         return new ExceptionResponse(404, e);
     }
 
-    @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
     @ExceptionHandler({
-            InvalidMetricsConfigurationException.class
+            PreconditionFailedException.class
     })
-    public ExceptionResponse serverErrorHandler(Exception e) {
-        return new ExceptionResponse(500, e);
+    public ExceptionResponse preconditionFailedHandler(Exception e) {
+        return new ExceptionResponse(412, e);
     }
 
     @ResponseStatus(HttpStatus.METHOD_NOT_ALLOWED)
@@ -43,4 +57,22 @@ public class ExceptionHandlingAspect {
     public ExceptionResponse httpRequestMethodNotSupportedExceptionHandler(Exception e) {
         return new ExceptionResponse(405, e);
     }
+
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    @ExceptionHandler({
+            TooManyRequestsException.class
+    })
+    public ExceptionResponse tooManyRequestsHandler(TooManyRequestsException e, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+        return new ExceptionResponse(429, e);
+    }
+
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler({
+            ServiceUnavailableException.class
+    })
+    public ExceptionResponse serviceUnavailableHandler(ServiceUnavailableException e, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+        return new ExceptionResponse(503, e);
+    }
 }
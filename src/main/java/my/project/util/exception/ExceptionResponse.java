@@ -1,5 +1,7 @@
 package my.project.util.exception;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -12,6 +14,8 @@ public class ExceptionResponse {
     private int statusCode;
     private String exception;
     private String message;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private LocalDateTime time;
 
     public ExceptionResponse(int statusCode, Throwable exception) {
@@ -27,4 +31,17 @@ public class ExceptionResponse {
         this.message = message;
         this.time = LocalDateTime.now();
     }
+
+    /**
+     * Body for an outcome the controller answers without an exception. These are built once
+     * and shared between requests, so they carry no time.
+     */
+    public static ExceptionResponse expected(int statusCode, Throwable exception) {
+        ExceptionResponse response = new ExceptionResponse();
+        response.statusCode = statusCode;
+        response.exception = exception.getClass().getSimpleName();
+        response.message = exception.getMessage();
+
+        return response;
+    }
 }
@@ -1,13 +1,18 @@
 package my.project.util.exception.exceptions;
 
+/**
+ * A taken username, as routine as {@link UserNotFoundException} and just as stackless.
+ */
 public class DuplicateUsernameException extends RuntimeException {
 
+    public static final DuplicateUsernameException INSTANCE = new DuplicateUsernameException();
+
     public DuplicateUsernameException() {
-        super("Found Duplicate Username in Database");
+        super("Found Duplicate Username in Database", null, false, false);
     }
 
     public DuplicateUsernameException(String msg) {
-        super(msg);
+        super(msg, null, false, false);
     }
 
 }
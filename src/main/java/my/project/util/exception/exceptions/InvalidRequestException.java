@@ -0,0 +1,13 @@
+package my.project.util.exception.exceptions;
+
+public class InvalidRequestException extends RuntimeException {
+
+    public InvalidRequestException() {
+        super("Request could not be processed as submitted");
+    }
+
+    public InvalidRequestException(String msg) {
+        super(msg);
+    }
+
+}
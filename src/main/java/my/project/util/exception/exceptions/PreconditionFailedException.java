@@ -0,0 +1,18 @@
+package my.project.util.exception.exceptions;
+
+/**
+ * Stale If-Match version, stackless like {@link UserNotFoundException}.
+ */
+public class PreconditionFailedException extends RuntimeException {
+
+    public static final PreconditionFailedException INSTANCE = new PreconditionFailedException();
+
+    public PreconditionFailedException() {
+        super("User has been modified since the supplied version", null, false, false);
+    }
+
+    public PreconditionFailedException(String msg) {
+        super(msg, null, false, false);
+    }
+
+}
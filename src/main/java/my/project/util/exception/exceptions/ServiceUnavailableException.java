@@ -0,0 +1,30 @@
+package my.project.util.exception.exceptions;
+
+public class ServiceUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceUnavailableException() {
+        super("Service is at capacity, retry later");
+        this.retryAfterSeconds = 1;
+    }
+
+    public ServiceUnavailableException(String msg) {
+        super(msg);
+        this.retryAfterSeconds = 1;
+    }
+
+    /**
+     * Stackless, for rejections that are thrown often enough under overload to be preallocated.
+     */
+    public ServiceUnavailableException(String msg, long retryAfterSeconds) {
+        super(msg, null, false, false);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /** sent back as the Retry-After header */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+}
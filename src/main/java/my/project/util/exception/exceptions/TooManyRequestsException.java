@@ -0,0 +1,21 @@
+package my.project.util.exception.exceptions;
+
+/**
+ * A client went over its rate for an endpoint. Thrown once per refused request, so it is
+ * created without a stack trace.
+ */
+public class TooManyRequestsException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(long retryAfterSeconds) {
+        super("Rate limit exceeded, retry in " + retryAfterSeconds + "s", null, false, false);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /** sent back as the Retry-After header */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+}
@@ -1,13 +1,19 @@
 package my.project.util.exception.exceptions;
 
+/**
+ * Expected outcome rather than a fault, so it is created without a stack trace and hot paths
+ * throw the shared {@link #INSTANCE}.
+ */
 public class UserNotFoundException extends RuntimeException {
 
+    public static final UserNotFoundException INSTANCE = new UserNotFoundException();
+
     public UserNotFoundException() {
-        super("Could not locate user in database");
+        super("Could not locate user in database", null, false, false);
     }
 
     public UserNotFoundException(String msg) {
-        super(msg);
+        super(msg, null, false, false);
     }
 
 }
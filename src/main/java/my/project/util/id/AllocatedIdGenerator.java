@@ -0,0 +1,48 @@
+package my.project.util.id;
+
+import my.project.util.shard.ShardContext;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * Hibernate side of {@link IdAllocator}: ids are assigned in memory when an entity is
+ * persisted, so inserts need no round trip for their key and stay eligible for JDBC batching.
+ *
+ * Hibernate creates generators itself, the allocator bean reaches it through the
+ * {@link #ALLOCATOR_SETTING} entry that {@link IdAllocatorHibernateCustomizer} adds to the
+ * Hibernate settings.
+ */
+public class AllocatedIdGenerator implements IdentifierGenerator, Configurable {
+
+    public static final String ALLOCATOR_SETTING = "user-service.id-allocator";
+
+    private IdAllocator allocator;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Object configured = serviceRegistry.getService(ConfigurationService.class)
+                .getSettings()
+                .get(ALLOCATOR_SETTING);
+
+        if (!(configured instanceof IdAllocator))
+            throw new MappingException("Expected an IdAllocator under the Hibernate setting " + ALLOCATOR_SETTING);
+
+        this.allocator = (IdAllocator) configured;
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        // the insert runs against the shard bound for it, see ShardedUserRepositoryAspect
+        return allocator.nextId(ShardContext.current());
+    }
+
+}
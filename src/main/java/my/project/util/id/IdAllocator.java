@@ -0,0 +1,24 @@
+package my.project.util.id;
+
+/**
+ * Source of primary keys for new entities, handed to Hibernate through
+ * {@link AllocatedIdGenerator}. Implementations must be thread safe and must never return the
+ * same id twice, across every instance of the service writing to the same database.
+ */
+public interface IdAllocator {
+
+    /**
+     * A new id for a row written to {@code shard}, recoverable from the id with
+     * {@link #shardOf}. Always 0 when the service is not sharded.
+     */
+    long nextId(int shard);
+
+    int shardOf(long id);
+
+    /**
+     * An id above every id allocated before {@code epochMillis} and not above any allocated
+     * from then on, as far as the clocks of the instances agree.
+     */
+    long firstIdAt(long epochMillis);
+
+}
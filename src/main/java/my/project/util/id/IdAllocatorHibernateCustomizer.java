@@ -0,0 +1,24 @@
+package my.project.util.id;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+@Component
+public class IdAllocatorHibernateCustomizer implements HibernatePropertiesCustomizer {
+
+    private final IdAllocator allocator;
+
+    @Autowired
+    public IdAllocatorHibernateCustomizer(IdAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AllocatedIdGenerator.ALLOCATOR_SETTING, allocator);
+    }
+
+}
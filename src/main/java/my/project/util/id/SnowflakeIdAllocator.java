@@ -0,0 +1,132 @@
+package my.project.util.id;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+
+import my.project.util.shard.ShardingProperties;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Time ordered 64 bit ids: 41 bits of milliseconds since 2022-01-01, 10 bits of node id and
+ * 12 bits of sequence, so up to 4096 ids per millisecond per node with no coordination.
+ *
+ * Timestamp and sequence are kept together in one {@link AtomicLong}. Each id is the larger of
+ * "now, sequence 0" and "last id + 1", claimed with a single CAS. A clock that steps back, or a
+ * millisecond whose sequence runs out, therefore continues from the last id instead of
+ * repeating one, ids of a node only ever increase.
+ *
+ * The node id comes from {@code user-service.id.node-id}, or else from the ordinal at the end
+ * of the pod name (user-server-2 is node 2), see deployment.yml. With neither the application
+ * does not start.
+ *
+ * When the service is sharded, the low bits of the node field carry the shard the row was
+ * written to instead ({@link ShardingProperties#shardBits()} of them), which leaves fewer bits
+ * and so fewer possible node ids: 512 with two shards, 256 with up to four.
+ */
+@Component
+public class SnowflakeIdAllocator implements IdAllocator {
+
+    static final long EPOCH_MILLIS = 1_640_995_200_000L;
+
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeBits;
+    private final long shardMask;
+    private final LongSupplier clock;
+
+    // (milliseconds since EPOCH_MILLIS << SEQUENCE_BITS) | sequence, of the last id handed out
+    private final AtomicLong last = new AtomicLong();
+
+    private final Counter aheadOfClockCount;
+
+    @Autowired
+    public SnowflakeIdAllocator(CollectorRegistry collectorRegistry,
+                                ShardingProperties shardingProperties,
+                                @Value("${user-service.id.node-id:}") String nodeId,
+                                @Value("${user-service.id.pod-name:${HOSTNAME:}}") String podName) {
+        this(collectorRegistry, resolveNodeId(nodeId, podName), shardingProperties.shardBits(), System::currentTimeMillis);
+    }
+
+    SnowflakeIdAllocator(CollectorRegistry collectorRegistry, int nodeId, int shardBits, LongSupplier clock) {
+        int maxNodeId = (1 << (NODE_BITS - shardBits)) - 1;
+
+        if (nodeId < 0 || nodeId > maxNodeId)
+            throw new IllegalArgumentException("Node id must be between 0 and " + maxNodeId + ", got " + nodeId);
+
+        this.nodeBits = (long) nodeId << (SEQUENCE_BITS + shardBits);
+        this.shardMask = (1L << shardBits) - 1;
+        this.clock = clock;
+
+        aheadOfClockCount = Counter.build()
+                .name("id_allocator_ahead_of_clock_count")
+                .help("Ids issued with a timestamp ahead of the wall clock, after the clock stepped back or a millisecond ran out of sequence")
+                .register(collectorRegistry);
+
+        Gauge.build()
+                .name("id_allocator_node_id")
+                .help("Node id embedded in every id this instance allocates")
+                .register(collectorRegistry)
+                .set(nodeId);
+    }
+
+    @Override
+    public long nextId(int shard) {
+        long now = (clock.getAsLong() - EPOCH_MILLIS) << SEQUENCE_BITS;
+
+        while (true) {
+            long previous = last.get();
+            long next = Math.max(now, previous + 1);
+
+            if (last.compareAndSet(previous, next)) {
+                if (next - now > SEQUENCE_MASK)
+                    aheadOfClockCount.inc();
+
+                return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)
+                        | nodeBits
+                        | (long) shard << SEQUENCE_BITS
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    @Override
+    public int shardOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & shardMask);
+    }
+
+    @Override
+    public long firstIdAt(long epochMillis) {
+        return Math.max(0, epochMillis - EPOCH_MILLIS) << (NODE_BITS + SEQUENCE_BITS);
+    }
+
+    /**
+     * Guessing a node id is never safe, two instances that guess the same one hand out the same
+     * ids. Without an explicit one the pod name has to end in a StatefulSet ordinal, otherwise
+     * startup fails.
+     */
+    static int resolveNodeId(String configured, String podName) {
+
+        if (configured != null && !configured.isBlank())
+            return Integer.parseInt(configured.trim());
+
+        String ordinal = podName == null ? "" : podName.substring(podName.lastIndexOf('-') + 1);
+
+        if (podName == null || podName.indexOf('-') < 0 || ordinal.isEmpty() || ordinal.length() > 9
+                || !ordinal.chars().allMatch(c -> c >= '0' && c <= '9'))
+            throw new IllegalArgumentException("user-service.id.node-id is not set and pod name '" + podName
+                    + "' does not end in a StatefulSet ordinal, set user-service.id.node-id to an id unique to this instance");
+
+        return Integer.parseInt(ordinal);
+    }
+
+}
@@ -0,0 +1,178 @@
+package my.project.util.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe scalable bloom filter (Almeida et al.). Each time the newest slice reaches
+ * its capacity a larger slice with a tighter error rate is appended, so the compound
+ * false positive rate stays bounded by {@code falsePositiveRate / (1 - TIGHTENING_RATIO)}
+ * no matter how many entries are added. Entries can never be removed.
+ */
+public class ScalableBloomFilter {
+
+    private static final int GROWTH_FACTOR = 2;
+    private static final double TIGHTENING_RATIO = 0.5;
+
+    private final long initialCapacity;
+    private final double falsePositiveRate;
+
+    private volatile Slice[] slices;
+
+    public ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+        this.initialCapacity = Math.max(initialCapacity, 64);
+        this.falsePositiveRate = falsePositiveRate;
+        this.slices = new Slice[] { new Slice(this.initialCapacity, falsePositiveRate * (1 - TIGHTENING_RATIO)) };
+    }
+
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+
+        for (Slice slice : slices) {
+            if (slice.mightContain(hash))
+                return true;
+        }
+
+        return false;
+    }
+
+    public void put(String value) {
+        long hash = hash(value);
+
+        Slice[] current = slices;
+        for (Slice slice : current) {
+            if (slice.mightContain(hash))
+                return;
+        }
+
+        Slice last = current[current.length - 1];
+        if (last.isFull())
+            last = grow(current);
+
+        last.put(hash);
+    }
+
+    public long size() {
+        long size = 0;
+
+        for (Slice slice : slices)
+            size += slice.count.get();
+
+        return size;
+    }
+
+    /**
+     * Compound false positive probability estimated from the number of entries in each slice.
+     */
+    public double expectedFalsePositiveRate() {
+        double allMiss = 1.0;
+
+        for (Slice slice : slices)
+            allMiss *= 1.0 - slice.expectedFalsePositiveRate();
+
+        return 1.0 - allMiss;
+    }
+
+    private synchronized Slice grow(Slice[] seen) {
+        Slice[] current = slices;
+        Slice last = current[current.length - 1];
+
+        if (current != seen && !last.isFull())
+            return last;
+
+        Slice next = new Slice(
+                last.capacity * GROWTH_FACTOR,
+                last.falsePositiveRate * TIGHTENING_RATIO
+        );
+
+        Slice[] grown = new Slice[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[current.length] = next;
+        slices = grown;
+
+        return next;
+    }
+
+    private static long hash(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+
+        // murmur3 finalizer, FNV alone leaves the high bits poorly mixed
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+
+    private static final class Slice {
+
+        private final long capacity;
+        private final double falsePositiveRate;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicLongArray bits;
+        private final AtomicLong count = new AtomicLong();
+
+        private Slice(long capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) >>> 6);
+
+            this.bitCount = (long) words << 6;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+            this.bits = new AtomicLongArray(words);
+        }
+
+        private boolean isFull() {
+            return count.get() >= capacity;
+        }
+
+        private boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                    return false;
+            }
+
+            return true;
+        }
+
+        private void put(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+
+                long prev;
+                do {
+                    prev = bits.get(word);
+                } while ((prev & mask) == 0 && !bits.compareAndSet(word, prev, prev | mask));
+            }
+
+            count.incrementAndGet();
+        }
+
+        private double expectedFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-hashCount * (double) count.get() / bitCount), hashCount);
+        }
+    }
+
+}
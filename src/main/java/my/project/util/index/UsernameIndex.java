@@ -0,0 +1,256 @@
+package my.project.util.index;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
+import my.project.entity.dtos.UserResponse;
+import my.project.web.UserRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * In memory existence index of every username in the USER table. A negative answer is
+ * definite and lets callers skip the database, a positive answer only means "maybe".
+ *
+ * Until the first rebuild completes every lookup is reported as "maybe", so the index is
+ * always safe to consult. Names must be added after the write that persisted them has
+ * committed, otherwise a concurrent rebuild could miss them.
+ */
+@Component
+public class UsernameIndex {
+
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(UsernameIndex.class);
+
+    private final UserRepository userRepo;
+
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final double rebuildStaleFraction;
+
+    private volatile ScalableBloomFilter filter;
+    private volatile ScalableBloomFilter pending;
+    private volatile boolean ready;
+
+    private final AtomicLong staleEntries = new AtomicLong();
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final ExecutorService rebuildExecutor;
+
+    private final Counter.Child absentLookups;
+    private final Counter.Child presentLookups;
+    private final Counter.Child falsePositiveLookups;
+    private final Histogram rebuildHistogram;
+
+    @Autowired
+    public UsernameIndex(UserRepository userRepo,
+                         CollectorRegistry collectorRegistry,
+                         @Value("${user-service.username-index.expected-insertions:10000}") long expectedInsertions,
+                         @Value("${user-service.username-index.false-positive-rate:0.01}") double falsePositiveRate,
+                         @Value("${user-service.username-index.rebuild-stale-fraction:0.25}") double rebuildStaleFraction) {
+
+        this.userRepo = userRepo;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildStaleFraction = rebuildStaleFraction;
+        this.filter = new ScalableBloomFilter(expectedInsertions, falsePositiveRate);
+
+        this.rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "username-index-rebuild");
+            t.setDaemon(true);
+            return t;
+        });
+
+        Counter lookupCount = Counter.build()
+                .name("username_index_lookup_count")
+                .help("Username existence lookups by index result (absent lookups skip the database)")
+                .labelNames("result")
+                .register(collectorRegistry);
+
+        absentLookups = lookupCount.labels("absent");
+        presentLookups = lookupCount.labels("present");
+        falsePositiveLookups = lookupCount.labels("false_positive");
+
+        rebuildHistogram = Histogram.build()
+                .name("username_index_rebuild_seconds")
+                .help("Time taken to rebuild the username index from the database")
+                .buckets(0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60)
+                .register(collectorRegistry);
+
+        Gauge.build()
+                .name("username_index_expected_false_positive_rate")
+                .help("Estimated false positive probability of the username index")
+                .register(collectorRegistry)
+                .setChild(new Gauge.Child() {
+                    @Override
+                    public double get() {
+                        return filter.expectedFalsePositiveRate();
+                    }
+                });
+
+        Gauge.build()
+                .name("username_index_size")
+                .help("Number of usernames held by the username index")
+                .register(collectorRegistry)
+                .setChild(new Gauge.Child() {
+                    @Override
+                    public double get() {
+                        return filter.size();
+                    }
+                });
+    }
+
+    /**
+     * Answers whether the username is taken, only consulting {@code fallback} (the database)
+     * when the index cannot rule the name out.
+     */
+    public boolean isTaken(String username, Predicate<String> fallback) {
+
+        if (ready && !filter.mightContain(username)) {
+            absentLookups.inc();
+            return false;
+        }
+
+        boolean taken = fallback.test(username);
+
+        if (ready) {
+            if (taken)
+                presentLookups.inc();
+            else
+                falsePositiveLookups.inc();
+        }
+
+        return taken;
+    }
+
+    /**
+     * Bulk form of {@link #isTaken}, {@code fallback} is called at most once with every name
+     * the index could not rule out and must return the subset of them that exist. The names
+     * must not be null, callers validate them first.
+     */
+    public Map<String, Boolean> areTaken(Collection<String> usernames,
+                                         Function<Collection<String>, Collection<String>> fallback) {
+
+        Map<String, Boolean> taken = new LinkedHashMap<>();
+        List<String> maybePresent = new ArrayList<>(usernames.size());
+
+        for (String username : usernames) {
+            if (ready && !filter.mightContain(username)) {
+                absentLookups.inc();
+                taken.put(username, false);
+            } else {
+                maybePresent.add(username);
+                taken.put(username, true);
+            }
+        }
+
+        if (maybePresent.isEmpty())
+            return taken;
+
+        Set<String> existing = new HashSet<>(fallback.apply(maybePresent));
+
+        for (String username : maybePresent) {
+            boolean exists = existing.contains(username);
+            taken.put(username, exists);
+
+            if (ready) {
+                if (exists)
+                    presentLookups.inc();
+                else
+                    falsePositiveLookups.inc();
+            }
+        }
+
+        return taken;
+    }
+
+    public void add(String username) {
+        ScalableBloomFilter rebuilding = pending;
+
+        filter.put(username);
+
+        if (rebuilding != null)
+            rebuilding.put(username);
+    }
+
+    /**
+     * Records that a name was deleted or renamed away. Bloom filters cannot forget, so the old
+     * name stays "maybe present" until the next rebuild, which is queued in the background once
+     * enough names have gone stale.
+     */
+    public void markStale() {
+        long stale = staleEntries.incrementAndGet();
+
+        if (stale > rebuildStaleFraction * Math.max(filter.size(), expectedInsertions))
+            requestRebuild();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void requestRebuild() {
+        if (rebuildQueued.compareAndSet(false, true))
+            rebuildExecutor.execute(this::rebuild);
+    }
+
+    /**
+     * Reads the names in keyset pages, only one page is held besides the filter being built.
+     */
+    public void rebuild() {
+        rebuildQueued.set(false);
+
+        Histogram.Timer timer = rebuildHistogram.startTimer();
+        ScalableBloomFilter fresh = new ScalableBloomFilter(expectedInsertions, falsePositiveRate);
+        long staleBefore = staleEntries.get();
+
+        pending = fresh;
+        try {
+            long after = Long.MIN_VALUE;
+            List<UserResponse> page;
+
+            do {
+                page = userRepo.findPageAfter(after, PageRequest.of(0, LOAD_PAGE_SIZE));
+
+                for (UserResponse user : page) {
+                    fresh.put(user.getUsername());
+                    after = user.getUserID();
+                }
+
+            } while (page.size() == LOAD_PAGE_SIZE);
+
+            filter = fresh;
+            staleEntries.addAndGet(-staleBefore);
+            ready = true;
+
+        } catch (RuntimeException e) {
+            logger.warn("username index rebuild failed: {}", e.getMessage());
+
+        } finally {
+            pending = null;
+            timer.observeDuration();
+
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,241 @@
+package my.project.util.index;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
+import my.project.entity.dtos.UserResponse;
+import my.project.web.UserRepository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sorted in memory copy of every username and its id, for prefix search without a LIKE query.
+ * A lookup is a seek to the prefix followed by a walk over at most {@code limit} entries. Each
+ * entry holds one username (at most the 255 characters of the column) and its id, twice over:
+ * once by name for searching and once by id so deletes, which only know the id, can find it.
+ *
+ * Changes may arrive from other instances late or out of order, so every entry keeps the
+ * version that put it there and a change older than the entry is ignored. A delete leaves a
+ * tombstone for a while, so a create or rename of the same user arriving after it cannot bring
+ * the name back.
+ *
+ * Loaded in keyset pages once the application is ready, until then {@link #isReady()} is false
+ * and callers should answer from the database.
+ */
+@Component
+public class UsernamePrefixIndex {
+
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(UsernamePrefixIndex.class);
+
+    private final UserRepository userRepo;
+
+    private final ConcurrentNavigableMap<String, Long> idsByName = new ConcurrentSkipListMap<>();
+    private final Map<Long, Indexed> namesById = new ConcurrentHashMap<>();
+
+    // deleted ids, a change to one of them is late and must not add it again
+    private final Cache<Long, Boolean> tombstones;
+
+    // ids deleted while the initial load runs, so a page read before the delete cannot bring them back
+    private final Set<Long> removedDuringLoad = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean loading;
+    private volatile boolean ready;
+
+    private final ExecutorService loadExecutor;
+    private final Histogram loadHistogram;
+    private final Counter staleChanges;
+
+    @Autowired
+    public UsernamePrefixIndex(UserRepository userRepo, CollectorRegistry collectorRegistry,
+                               @Value("${user-service.search.tombstone-maximum-size:10000}") long tombstoneMaximumSize,
+                               @Value("${user-service.search.tombstone-time-to-live:1m}") Duration tombstoneTimeToLive) {
+        this.userRepo = userRepo;
+
+        this.tombstones = Caffeine.newBuilder()
+                .maximumSize(tombstoneMaximumSize)
+                .expireAfterWrite(tombstoneTimeToLive)
+                .build();
+
+        this.loadExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "username-prefix-index-load");
+            t.setDaemon(true);
+            return t;
+        });
+
+        loadHistogram = Histogram.build()
+                .name("username_prefix_index_load_seconds")
+                .help("Time taken to load the username prefix index from the database")
+                .buckets(0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60, 300)
+                .register(collectorRegistry);
+
+        staleChanges = Counter.build()
+                .name("username_prefix_index_stale_change_count")
+                .help("Changes ignored because the index already held a newer version of the user or its delete")
+                .register(collectorRegistry);
+
+        Gauge.build()
+                .name("username_prefix_index_size")
+                .help("Number of usernames held by the username prefix index")
+                .register(collectorRegistry)
+                .setChild(new Gauge.Child() {
+                    @Override
+                    public double get() {
+                        return namesById.size();
+                    }
+                });
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Up to {@code limit} users whose name starts with {@code prefix}, in username order.
+     */
+    public List<UserResponse> search(String prefix, int limit) {
+        List<UserResponse> matches = new ArrayList<>(Math.min(limit, 64));
+
+        for (Map.Entry<String, Long> entry : idsByName.tailMap(prefix, true).entrySet()) {
+            if (matches.size() == limit || !entry.getKey().startsWith(prefix))
+                break;
+
+            matches.add(new UserResponse(entry.getValue(), entry.getKey()));
+        }
+
+        return matches;
+    }
+
+    /**
+     * Adds a user or renames one already indexed, call after the write has committed with the
+     * version it produced. A create is version 0.
+     */
+    public void put(Long userID, String username, long version) {
+        namesById.compute(userID, (id, current) -> {
+            if (tombstones.getIfPresent(id) != null || (current != null && !isNewer(version, current.version))) {
+                staleChanges.inc();
+                return current;
+            }
+
+            if (current != null && !current.username.equals(username))
+                idsByName.remove(current.username, id);
+
+            idsByName.put(username, id);
+            return new Indexed(username, version);
+        });
+    }
+
+    public void remove(Long userID) {
+        // before the entry goes, so a put for the id either runs first or sees the tombstone
+        tombstones.put(userID, Boolean.TRUE);
+
+        if (loading)
+            removedDuringLoad.add(userID);
+
+        Indexed removed = namesById.remove(userID);
+
+        if (removed != null)
+            idsByName.remove(removed.username, userID);
+    }
+
+    /**
+     * A create never replaces what is already there, which is the same user at its first
+     * version or later.
+     */
+    private static boolean isNewer(long version, Long current) {
+        if (version == 0L)
+            return false;
+
+        return current == null || version > current;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void requestLoad() {
+        loadExecutor.execute(this::load);
+    }
+
+    /**
+     * Reads every user in keyset pages. Writes made while this runs have already been applied
+     * by {@link #put} and {@link #remove}, so loaded rows never replace or revive them.
+     */
+    public void load() {
+        Histogram.Timer timer = loadHistogram.startTimer();
+        loading = true;
+
+        try {
+            long after = Long.MIN_VALUE;
+            List<UserResponse> page;
+
+            do {
+                page = userRepo.findVersionedPageAfter(after, PageRequest.of(0, LOAD_PAGE_SIZE));
+
+                for (UserResponse user : page) {
+                    if (!removedDuringLoad.contains(user.getUserID()))
+                        namesById.computeIfAbsent(user.getUserID(), id -> {
+                            if (tombstones.getIfPresent(id) != null)
+                                return null;
+
+                            idsByName.put(user.getUsername(), id);
+                            return new Indexed(user.getUsername(), user.getVersion());
+                        });
+
+                    after = user.getUserID();
+                }
+
+            } while (page.size() == LOAD_PAGE_SIZE);
+
+            ready = true;
+
+        } catch (RuntimeException e) {
+            logger.warn("username prefix index load failed: {}", e.getMessage());
+
+        } finally {
+            loading = false;
+            removedDuringLoad.clear();
+            timer.observeDuration();
+
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        loadExecutor.shutdownNow();
+    }
+
+    private static final class Indexed {
+
+        private final String username;
+
+        private final Long version;
+
+        private Indexed(String username, Long version) {
+            this.username = username;
+            this.version = version;
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+package my.project.util.limit;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+
+import my.project.util.exception.exceptions.ServiceUnavailableException;
+import my.project.util.metrics.CollectMetrics;
+import my.project.util.metrics.ControllerEndpoints;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.*;
+
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the calls in flight per endpoint with a {@link GradientLimiter}, so a slow database
+ * turns into quick 503s instead of an ever growing backlog. Every endpoint has its own limit,
+ * a burst of writes can only exhaust the write limits.
+ *
+ * Runs inside {@link RateLimitAspect} but outside the metrics and logging aspects, a rejected
+ * call costs nothing beyond its own rejection count.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class ConcurrencyLimitAspect {
+
+    private final ConcurrencyLimitProperties properties;
+
+    private final Gauge limitGauge;
+    private final Gauge inFlightGauge;
+    private final Counter rejectedCount;
+
+    private final Map<Method, EndpointLimit> methods = new ConcurrentHashMap<>();
+    private final Map<String, EndpointLimit> endpoints = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ConcurrencyLimitAspect(CollectorRegistry collectorRegistry, ConcurrencyLimitProperties properties) {
+        this.properties = properties;
+
+        limitGauge = Gauge.build()
+                .name("concurrency_limit")
+                .help("Current adaptive concurrency limit by endpoint")
+                .labelNames("endpoint")
+                .register(collectorRegistry);
+
+        inFlightGauge = Gauge.build()
+                .name("concurrency_limit_in_flight")
+                .help("Calls currently holding a concurrency limit slot by endpoint")
+                .labelNames("endpoint")
+                .register(collectorRegistry);
+
+        rejectedCount = Counter.build()
+                .name("concurrency_limit_rejected_count")
+                .help("Requests rejected with 503 because their endpoint was at its concurrency limit")
+                .labelNames("endpoint")
+                .register(collectorRegistry);
+    }
+
+    @Around("@annotation(my.project.util.metrics.CollectMetrics)")
+    public Object limitConcurrency(ProceedingJoinPoint jp) throws Throwable {
+
+        if (!properties.isEnabled())
+            return jp.proceed();
+
+        EndpointLimit endpoint = resolve(jp);
+
+        if (!endpoint.limiter.tryAcquire()) {
+            endpoint.rejected.inc();
+            throw endpoint.rejection;
+        }
+
+        long start = System.nanoTime();
+        Object returned;
+
+        try {
+            returned = jp.proceed();
+
+        } catch (Throwable t) {
+            release(endpoint.limiter, start, t);
+            throw t;
+
+        }
+
+        if (returned instanceof CompletionStage)
+            ((CompletionStage<?>) returned).whenComplete((value, t) -> release(endpoint.limiter, start, t));
+        else if (isStreaming(returned))
+            return releasedAfterStreaming((ResponseEntity<?>) returned, endpoint.limiter, start);
+        else
+            release(endpoint.limiter, start, null);
+
+        return returned;
+    }
+
+    private static boolean isStreaming(Object returned) {
+        return returned instanceof ResponseEntity
+                && ((ResponseEntity<?>) returned).getBody() instanceof StreamingResponseBody;
+    }
+
+    /**
+     * Exports and imports return before any of the work is done, the body does it later on
+     * another thread. The slot is held until the body has been written, so the limits of those
+     * endpoints count the streams actually running and the latency sampled is the whole stream.
+     *
+     * A body that is never written, because the client went away, the async request timed out
+     * or something after the handler failed, gives its slot back when the request ends instead.
+     * Whichever comes first releases it, once.
+     */
+    private static ResponseEntity<StreamingResponseBody> releasedAfterStreaming(ResponseEntity<?> response,
+                                                                               GradientLimiter limiter, long start) {
+        StreamingResponseBody body = (StreamingResponseBody) response.getBody();
+        AtomicBoolean released = new AtomicBoolean();
+
+        StreamingResponseBody releasing = out -> {
+            Throwable failure = null;
+
+            try {
+                body.writeTo(out);
+
+            } catch (Throwable t) {
+                failure = t;
+                throw t;
+
+            } finally {
+                if (released.compareAndSet(false, true))
+                    release(limiter, start, failure);
+
+            }
+        };
+
+        releaseWhenRequestEnds(() -> {
+            // a stream cut short says nothing about latency
+            if (released.compareAndSet(false, true))
+                limiter.onIgnore();
+        });
+
+        return new ResponseEntity<>(releasing, response.getHeaders(), response.getStatusCode());
+    }
+
+    /**
+     * Once async processing has started, its completion runs {@code abandon} on success, error
+     * and timeout alike. If it never starts, the end of the handler's own dispatch does. Outside
+     * a request nothing is registered and only the body releases.
+     */
+    private static void releaseWhenRequestEnds(Runnable abandon) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+
+        if (!(attributes instanceof ServletRequestAttributes))
+            return;
+
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(((ServletRequestAttributes) attributes).getRequest());
+
+        asyncManager.registerCallableInterceptor(ConcurrencyLimitAspect.class.getName(), new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                abandon.run();
+            }
+        });
+
+        attributes.registerDestructionCallback(ConcurrencyLimitAspect.class.getName(), () -> {
+            if (!asyncManager.isConcurrentHandlingStarted())
+                abandon.run();
+        }, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    /**
+     * Only failures that point at an overloaded backend shrink the limit. Other exceptions,
+     * mostly bad input, finish too early to say anything about latency.
+     */
+    private static void release(GradientLimiter limiter, long start, Throwable t) {
+        if (t instanceof CompletionException && t.getCause() != null)
+            t = t.getCause();
+
+        if (t == null)
+            limiter.onSuccess(System.nanoTime() - start);
+        else if (t instanceof ServiceUnavailableException
+                || t instanceof TransientDataAccessException
+                || t instanceof DataAccessResourceFailureException)
+            limiter.onDropped();
+        else
+            limiter.onIgnore();
+    }
+
+    private EndpointLimit resolve(ProceedingJoinPoint jp) {
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        EndpointLimit endpoint = methods.get(method);
+
+        if (endpoint == null)
+            endpoint = methods.computeIfAbsent(method,
+                    m -> endpoints.computeIfAbsent(ControllerEndpoints.labelOf(m), label -> createEndpointLimit(m, label)));
+
+        return endpoint;
+    }
+
+    private EndpointLimit createEndpointLimit(Method method, String label) {
+        ControllerEndpoints endPoint = method.getAnnotation(CollectMetrics.class).endPoint();
+
+        GradientLimiter limiter = new GradientLimiter(
+                properties.getInitialLimit(),
+                properties.getMinLimit(),
+                properties.maxLimitFor(endPoint),
+                properties.getSmoothing(),
+                properties.getTolerance(),
+                properties.getBackoffRatio(),
+                properties.getLongWindow()
+        );
+
+        limitGauge.setChild(new Gauge.Child() {
+            @Override
+            public double get() {
+                return limiter.getLimit();
+            }
+        }, label);
+
+        inFlightGauge.setChild(new Gauge.Child() {
+            @Override
+            public double get() {
+                return limiter.getInFlight();
+            }
+        }, label);
+
+        return new EndpointLimit(limiter, rejectedCount.labels(label), new ServiceUnavailableException(
+                "Too many concurrent " + label + " requests, retry later",
+                Math.max(1, properties.getRetryAfter().getSeconds())
+        ));
+    }
+
+    private static final class EndpointLimit {
+
+        private final GradientLimiter limiter;
+        private final Counter.Child rejected;
+
+        // preallocated and stackless, shedding load should not allocate
+        private final ServiceUnavailableException rejection;
+
+        private EndpointLimit(GradientLimiter limiter, Counter.Child rejected, ServiceUnavailableException rejection) {
+            this.limiter = limiter;
+            this.rejected = rejected;
+            this.rejection = rejection;
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package my.project.util.limit;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import my.project.util.metrics.ControllerEndpoints;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@Component
+@ConfigurationProperties(prefix = "user-service.concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    private boolean enabled = true;
+
+    private int initialLimit = 20;
+    private int minLimit = 2;
+
+    /**
+     * Ceiling for any endpoint without its own entry in {@link #maxLimits}.
+     */
+    private int maxLimit = 200;
+
+    private Map<ControllerEndpoints, Integer> maxLimits = new EnumMap<>(ControllerEndpoints.class);
+
+    /** weight of each new estimate against the current limit */
+    private double smoothing = 0.2;
+
+    /** how much slower than the long term average a sample may be before the limit shrinks */
+    private double tolerance = 1.5;
+
+    /** factor applied to the limit when a call times out or is shed further down */
+    private double backoffRatio = 0.9;
+
+    /** number of samples the long term latency average roughly spans */
+    private int longWindow = 600;
+
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    public int maxLimitFor(ControllerEndpoints endPoint) {
+        return maxLimits.getOrDefault(endPoint, maxLimit);
+    }
+
+}
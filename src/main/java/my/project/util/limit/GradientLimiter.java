@@ -0,0 +1,110 @@
+package my.project.util.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit for a single endpoint, moved up and down by the latency of the calls it
+ * lets through.
+ *
+ * Each sample is compared to a slow moving average of past samples. While they agree the
+ * limit grows by roughly its square root, once samples run slower than the average by more
+ * than the tolerance the limit shrinks in proportion, down to at most half per sample before
+ * smoothing. A dropped call (timeout, saturated pool) backs the limit off directly.
+ */
+public class GradientLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double tolerance;
+    private final double backoffRatio;
+    private final double longWindow;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+
+    // guarded by this
+    private double longRttNanos;
+
+    public GradientLimiter(int initialLimit, int minLimit, int maxLimit,
+                           double smoothing, double tolerance, double backoffRatio, int longWindow) {
+
+        if (minLimit < 1 || maxLimit < minLimit)
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= max, got " + minLimit + " and " + maxLimit);
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.tolerance = tolerance;
+        this.backoffRatio = backoffRatio;
+        this.longWindow = longWindow;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * @return false when the limit is already reached, true when a slot was taken and must be
+     * given back through one of the {@code on*} methods
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+
+            if (current >= (int) limit)
+                return false;
+
+            if (inFlight.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+
+    public void onSuccess(long rttNanos) {
+        int wasInFlight = inFlight.getAndDecrement();
+        sample(Math.max(1, rttNanos), wasInFlight);
+    }
+
+    public void onDropped() {
+        inFlight.decrementAndGet();
+
+        synchronized (this) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        }
+    }
+
+    /** for calls whose latency says nothing about load, such as rejected input */
+    public void onIgnore() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void sample(long rttNanos, int wasInFlight) {
+
+        if (longRttNanos == 0)
+            longRttNanos = rttNanos;
+        else
+            longRttNanos += (rttNanos - longRttNanos) / longWindow;
+
+        // after a slow stretch the average lags behind, let it catch up once latency recovers
+        if (longRttNanos > 2 * rttNanos)
+            longRttNanos *= 0.95;
+
+        double current = limit;
+
+        // the endpoint is not using the limit it has, so a fast sample is no reason to raise it
+        if (wasInFlight < current / 2)
+            return;
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rttNanos));
+        double next = current * gradient + Math.sqrt(current);
+
+        next = current * (1 - smoothing) + next * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+}
@@ -0,0 +1,172 @@
+package my.project.util.limit;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+
+import my.project.util.exception.exceptions.TooManyRequestsException;
+import my.project.util.metrics.CollectMetrics;
+import my.project.util.metrics.ControllerEndpoints;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.*;
+
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how fast each client may call each endpoint, so one client looping on a single
+ * endpoint is turned away with 429 before it takes a concurrency slot or a connection.
+ * Clients are told apart by the configured header when it holds a known key, otherwise by
+ * remote address.
+ *
+ * Allowed responses carry X-RateLimit-Limit and X-RateLimit-Remaining, refused ones also
+ * Retry-After.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RateLimitAspect {
+
+    static final String LIMIT_HEADER = "X-RateLimit-Limit";
+    static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+
+    private final RateLimitProperties properties;
+
+    private final Counter limitedCount;
+
+    private final Map<Method, EndpointBuckets> methods = new ConcurrentHashMap<>();
+    private final Map<String, EndpointBuckets> endpoints = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService evictionExecutor;
+
+    @Autowired
+    public RateLimitAspect(CollectorRegistry collectorRegistry, RateLimitProperties properties) {
+        this.properties = properties;
+
+        limitedCount = Counter.build()
+                .name("rate_limit_limited_count")
+                .help("Requests refused with 429 because the client was over its rate for the endpoint")
+                .labelNames("endpoint")
+                .register(collectorRegistry);
+
+        Gauge.build()
+                .name("rate_limit_tracked_clients")
+                .help("Clients with a partly drained bucket, across all endpoints")
+                .register(collectorRegistry)
+                .setChild(new Gauge.Child() {
+                    @Override
+                    public double get() {
+                        return endpoints.values().stream().mapToInt(e -> e.store.size()).sum();
+                    }
+                });
+
+        this.evictionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rate-limit-eviction");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long interval = properties.getEvictionInterval().toMillis();
+        evictionExecutor.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Around("@annotation(my.project.util.metrics.CollectMetrics)")
+    public Object limitRate(ProceedingJoinPoint jp) throws Throwable {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+
+        // only requests coming in over HTTP have a client to limit
+        if (!properties.isEnabled() || !(attributes instanceof ServletRequestAttributes))
+            return jp.proceed();
+
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+
+        EndpointBuckets endpoint = resolve(jp);
+        long remaining = endpoint.store.tryAcquire(clientOf(request), System.nanoTime());
+
+        if (response != null) {
+            response.setHeader(LIMIT_HEADER, endpoint.burstHeader);
+            response.setHeader(REMAINING_HEADER, String.valueOf(Math.max(0, remaining)));
+        }
+
+        if (remaining < 0) {
+            endpoint.limited.inc();
+            throw new TooManyRequestsException(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(-remaining - 1) + 1));
+        }
+
+        return jp.proceed();
+    }
+
+    private String clientOf(HttpServletRequest request) {
+        String key = request.getHeader(properties.getClientHeader());
+
+        if (key == null || !properties.getClientKeys().contains(key))
+            return request.getRemoteAddr();
+
+        // prefixed so a key can never share a bucket with an address
+        return "key:" + key;
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+
+        for (EndpointBuckets endpoint : endpoints.values())
+            endpoint.store.evictIdle(now);
+    }
+
+    private EndpointBuckets resolve(ProceedingJoinPoint jp) {
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        EndpointBuckets endpoint = methods.get(method);
+
+        if (endpoint == null)
+            endpoint = methods.computeIfAbsent(method,
+                    m -> endpoints.computeIfAbsent(ControllerEndpoints.labelOf(m), label -> createEndpointBuckets(m, label)));
+
+        return endpoint;
+    }
+
+    private EndpointBuckets createEndpointBuckets(Method method, String label) {
+        RateLimitProperties.Bucket bucket = properties.bucketFor(method.getAnnotation(CollectMetrics.class).endPoint());
+
+        return new EndpointBuckets(
+                new TokenBucketStore(bucket.getPermitsPerSecond(), bucket.getBurst(), properties.getMaxTrackedClients()),
+                limitedCount.labels(label)
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictionExecutor.shutdownNow();
+    }
+
+    private static final class EndpointBuckets {
+
+        private final TokenBucketStore store;
+        private final Counter.Child limited;
+        private final String burstHeader;
+
+        private EndpointBuckets(TokenBucketStore store, Counter.Child limited) {
+            this.store = store;
+            this.limited = limited;
+            this.burstHeader = String.valueOf(store.getBurst());
+        }
+    }
+
+}
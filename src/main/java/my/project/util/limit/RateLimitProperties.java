@@ -0,0 +1,65 @@
+package my.project.util.limit;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import my.project.util.metrics.ControllerEndpoints;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+@Data
+@NoArgsConstructor
+@Component
+@ConfigurationProperties(prefix = "user-service.rate-limit")
+public class RateLimitProperties {
+
+    /** off by default, without client keys every caller behind one proxy shares a bucket */
+    private boolean enabled = false;
+
+    /** clients sending one of the {@link #clientKeys} in this header are limited by that key */
+    private String clientHeader = "X-API-Key";
+
+    /**
+     * Keys issued to clients. Any other value of the header is ignored and the request is
+     * limited by remote address, so making up a new key per request gets no fresh bucket.
+     */
+    private Set<String> clientKeys = new HashSet<>();
+
+    /** most clients tracked per endpoint, the least recently seen are dropped beyond it */
+    private long maxTrackedClients = 100_000;
+
+    /**
+     * Bucket for any endpoint without its own entry in {@link #buckets}.
+     */
+    private Bucket defaultBucket = new Bucket(100, 200);
+
+    private Map<ControllerEndpoints, Bucket> buckets = new EnumMap<>(ControllerEndpoints.class);
+
+    /** how often buckets that have refilled completely are dropped */
+    private Duration evictionInterval = Duration.ofMinutes(1);
+
+    public Bucket bucketFor(ControllerEndpoints endPoint) {
+        return buckets.getOrDefault(endPoint, defaultBucket);
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Bucket {
+
+        private double permitsPerSecond;
+        private int burst;
+
+        public Bucket(double permitsPerSecond, int burst) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package my.project.util.limit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets for every client of one endpoint, kept as a single theoretical arrival time
+ * per client (GCRA). Taking a token is a CAS on that client's {@link AtomicLong}, there are
+ * no locks and no refill timers.
+ *
+ * A bucket whose arrival time has passed is full again and carries no state worth keeping,
+ * {@link #evictIdle} drops those so the map only holds clients that were recently active.
+ * Between sweeps the store is capped at a maximum number of clients, beyond which the least
+ * recently seen are dropped; such a client starts over with a full bucket.
+ */
+public class TokenBucketStore {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int burst;
+
+    private final Cache<String, AtomicLong> arrivals;
+
+    /**
+     * @param permitsPerSecond sustained rate each client is allowed
+     * @param burst            requests a client may make at once after being idle
+     * @param maxClients       most clients tracked at once
+     */
+    public TokenBucketStore(double permitsPerSecond, int burst, long maxClients) {
+
+        if (permitsPerSecond <= 0 || burst < 1)
+            throw new IllegalArgumentException("Rate and burst must be positive, got " + permitsPerSecond + " and " + burst);
+
+        this.intervalNanos = (long) (1_000_000_000L / permitsPerSecond);
+        this.burstNanos = intervalNanos * burst;
+        this.burst = burst;
+
+        this.arrivals = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .build();
+    }
+
+    /**
+     * @return the tokens left to the client after taking one, or a negative number of
+     * nanoseconds to wait when its bucket is empty and nothing was taken
+     */
+    public long tryAcquire(String client, long nowNanos) {
+        AtomicLong arrival = arrivals.get(client, c -> new AtomicLong(nowNanos));
+
+        while (true) {
+            long current = arrival.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            long debt = next - nowNanos;
+
+            if (debt > burstNanos)
+                return -(debt - burstNanos);
+
+            if (arrival.compareAndSet(current, next))
+                return (burstNanos - debt) / intervalNanos;
+        }
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public int size() {
+        return (int) arrivals.estimatedSize();
+    }
+
+    /**
+     * A request racing with eviction may land on a bucket that is being dropped, at worst
+     * that client starts over with a full bucket, which it had anyway.
+     */
+    public void evictIdle(long nowNanos) {
+        arrivals.asMap().values().removeIf(arrival -> arrival.get() - nowNanos <= 0);
+    }
+
+}
@@ -0,0 +1,78 @@
+package my.project.util.logging;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Log argument that defers rendering until the logging framework formats the message, and
+ * caps how much of the value it renders so a large payload cannot blow up a log line.
+ */
+public final class BoundedValue {
+
+    private final Object value;
+    private final int maxLength;
+    private final int maxElements;
+
+    public BoundedValue(Object value, int maxLength, int maxElements) {
+        this.value = value;
+        this.maxLength = maxLength;
+        this.maxElements = maxElements;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        render(value, sb);
+
+        if (sb.length() > maxLength) {
+            sb.setLength(maxLength);
+            sb.append("...");
+        }
+
+        return sb.toString();
+    }
+
+    private void render(Object o, StringBuilder sb) {
+        if (o instanceof Object[]) {
+            Object[] array = (Object[]) o;
+
+            sb.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0)
+                    sb.append(", ");
+
+                if (i == maxElements || sb.length() > maxLength) {
+                    sb.append("...(").append(array.length).append(" total)");
+                    break;
+                }
+
+                render(array[i], sb);
+            }
+            sb.append(']');
+
+        } else if (o instanceof Collection) {
+            Collection<?> collection = (Collection<?>) o;
+            Iterator<?> it = collection.iterator();
+
+            sb.append('[');
+            for (int i = 0; it.hasNext(); i++) {
+                if (i > 0)
+                    sb.append(", ");
+
+                if (i == maxElements || sb.length() > maxLength) {
+                    sb.append("...(").append(collection.size()).append(" total)");
+                    break;
+                }
+
+                render(it.next(), sb);
+            }
+            sb.append(']');
+
+        } else {
+            String rendered = String.valueOf(o);
+            sb.append(rendered, 0, Math.min(rendered.length(), maxLength + 1));
+
+        }
+    }
+
+}
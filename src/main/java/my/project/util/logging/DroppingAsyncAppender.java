@@ -0,0 +1,38 @@
+package my.project.util.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import io.prometheus.client.Counter;
+
+/**
+ * Async appender that never blocks the logging thread and counts what it throws away.
+ *
+ * Events at INFO and below are discarded once less than discardingThreshold slots remain,
+ * and when the queue is completely full every event is dropped. Counting is done against a
+ * snapshot of the remaining capacity, so a drop racing another producer on the last free
+ * slot can go uncounted.
+ */
+public class DroppingAsyncAppender extends AsyncAppender {
+
+    public static final Counter DROPPED_EVENTS = Counter.build()
+            .name("log_events_dropped_count")
+            .help("Total number of log events dropped by the async appender")
+            .create();
+
+    public DroppingAsyncAppender() {
+        setNeverBlock(true);
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        int remaining = getRemainingCapacity();
+
+        if (remaining == 0 || (remaining < getDiscardingThreshold() && isDiscardable(event))) {
+            DROPPED_EVENTS.inc();
+            return;
+        }
+
+        super.append(event);
+    }
+
+}
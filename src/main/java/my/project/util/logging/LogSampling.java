@@ -0,0 +1,64 @@
+package my.project.util.logging;
+
+import java.util.function.Supplier;
+
+/**
+ * Whether the request the current thread works for was sampled for debug logging. The decision
+ * is made once at the endpoint and bound here, so the service and repository calls it leads to
+ * log all together or not at all, instead of each drawing against its own rate.
+ *
+ * Work handed to another thread does not see the binding unless it is carried over with
+ * {@link #capture(Supplier)}.
+ */
+public final class LogSampling {
+
+    private static final ThreadLocal<Boolean> SAMPLED = new ThreadLocal<>();
+
+    private LogSampling() {}
+
+    /**
+     * The decision bound to this thread, null outside of a request that made one.
+     */
+    public static Boolean current() {
+        return SAMPLED.get();
+    }
+
+    /**
+     * Binds {@code sampled} to this thread and returns what was bound before, which has to be
+     * handed back to {@link #restore(Boolean)} once the work is done.
+     */
+    public static Boolean bind(Boolean sampled) {
+        Boolean previous = SAMPLED.get();
+        restore(sampled);
+
+        return previous;
+    }
+
+    public static void restore(Boolean previous) {
+        if (previous == null)
+            SAMPLED.remove();
+        else
+            SAMPLED.set(previous);
+    }
+
+    public static <T> T callWith(Boolean sampled, Supplier<T> work) {
+        Boolean previous = bind(sampled);
+
+        try {
+            return work.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Wraps {@code work} so it runs with the decision bound to the calling thread right now,
+     * whichever thread ends up running it.
+     */
+    public static <T> Supplier<T> capture(Supplier<T> work) {
+        Boolean sampled = SAMPLED.get();
+
+        return () -> callWith(sampled, work);
+    }
+
+}
@@ -0,0 +1,45 @@
+package my.project.util.logging;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import my.project.util.metrics.ControllerEndpoints;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@Component
+@ConfigurationProperties(prefix = "user-service.logging")
+public class LoggingProperties {
+
+    /**
+     * Fraction of calls logged at debug level for endpoints without their own entry in
+     * {@link #sampleRates}, and for other methods when they are not called on behalf of an
+     * endpoint (see {@link LogSampling}).
+     */
+    private double defaultSampleRate = 1.0;
+
+    private Map<ControllerEndpoints, Double> sampleRates = new EnumMap<>(ControllerEndpoints.class);
+
+    /**
+     * Longest rendering of a single argument or return value before it is truncated.
+     */
+    private int maxValueLength = 256;
+
+    /**
+     * Most arrays / collection elements rendered before the rest are elided.
+     */
+    private int maxElements = 16;
+
+    public double sampleRateFor(ControllerEndpoints endPoint) {
+        return endPoint == null
+                ? defaultSampleRate
+                : sampleRates.getOrDefault(endPoint, defaultSampleRate);
+    }
+
+}
@@ -1,10 +1,31 @@
 package my.project.util.metrics;
 
+import java.lang.reflect.Method;
+import java.util.Locale;
+
 public enum ControllerEndpoints {
     UNASSIGNED,
     CHECK_USERNAME_AVAILABILITY,
+    CHECK_USERNAMES_AVAILABILITY,
+    SEARCH_USERNAMES,
     ADD_USER,
+    ADD_USERS,
+    IMPORT_USERS,
     GET_USER,
+    LIST_USERS,
+    EXPORT_USERS,
     UPDATE_USER,
-    DELETE_USER
+    DELETE_USER;
+
+    /**
+     * Label for a {@link CollectMetrics} method, a method left as UNASSIGNED falls back to its
+     * own name so new endpoints are told apart without any changes here.
+     */
+    public static String labelOf(Method method) {
+        ControllerEndpoints endPoint = method.getAnnotation(CollectMetrics.class).endPoint();
+
+        return endPoint == UNASSIGNED
+                ? method.getName()
+                : endPoint.name().toLowerCase(Locale.ROOT);
+    }
 }
@@ -0,0 +1,101 @@
+package my.project.util.metrics;
+
+import io.prometheus.client.Collector;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram family in which every label combination can carry its own bucket layout, which
+ * the simpleclient Histogram does not allow. Children are meant to be looked up once and
+ * kept, observing a value does not allocate.
+ */
+public class LabeledHistogram extends Collector {
+
+    private final String name;
+    private final String help;
+    private final List<String> labelNames;
+    private final List<String> bucketLabelNames;
+
+    private final ConcurrentMap<List<String>, Child> children = new ConcurrentHashMap<>();
+
+    public LabeledHistogram(String name, String help, String... labelNames) {
+        this.name = name;
+        this.help = help;
+        this.labelNames = List.of(labelNames);
+
+        List<String> withLe = new ArrayList<>(this.labelNames);
+        withLe.add("le");
+        this.bucketLabelNames = Collections.unmodifiableList(withLe);
+    }
+
+    /**
+     * Returns the child for the label values, creating it with {@code buckets} (upper bounds
+     * in seconds) if it does not exist yet. An existing child keeps its original buckets.
+     */
+    public Child child(double[] buckets, String... labelValues) {
+        if (labelValues.length != labelNames.size())
+            throw new IllegalArgumentException("Expected " + labelNames.size() + " label values for " + name);
+
+        return children.computeIfAbsent(List.of(labelValues), v -> new Child(buckets));
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples.Sample> samples = new ArrayList<>();
+
+        children.forEach((labelValues, child) -> {
+            long cumulative = 0;
+
+            for (int i = 0; i < child.upperBounds.length; i++) {
+                cumulative += child.counts[i].sum();
+
+                List<String> bucketLabelValues = new ArrayList<>(labelValues);
+                bucketLabelValues.add(doubleToGoString(child.upperBounds[i]));
+
+                samples.add(new MetricFamilySamples.Sample(name + "_bucket", bucketLabelNames, bucketLabelValues, cumulative));
+            }
+
+            samples.add(new MetricFamilySamples.Sample(name + "_count", labelNames, labelValues, cumulative));
+            samples.add(new MetricFamilySamples.Sample(name + "_sum", labelNames, labelValues, child.sum.sum()));
+        });
+
+        return Collections.singletonList(new MetricFamilySamples(name, Type.HISTOGRAM, help, samples));
+    }
+
+    public static final class Child {
+
+        private final double[] upperBounds;
+        private final LongAdder[] counts;
+        private final DoubleAdder sum = new DoubleAdder();
+
+        private Child(double[] buckets) {
+            double[] sorted = Arrays.copyOf(buckets, buckets.length);
+            Arrays.sort(sorted);
+
+            if (sorted.length == 0 || sorted[sorted.length - 1] != Double.POSITIVE_INFINITY) {
+                sorted = Arrays.copyOf(sorted, sorted.length + 1);
+                sorted[sorted.length - 1] = Double.POSITIVE_INFINITY;
+            }
+
+            this.upperBounds = sorted;
+            this.counts = new LongAdder[sorted.length];
+
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = new LongAdder();
+        }
+
+        public void observe(double value) {
+            int bucket = 0;
+            while (value > upperBounds[bucket])
+                bucket++;
+
+            counts[bucket].increment();
+            sum.add(value);
+        }
+    }
+
+}
@@ -1,38 +1,42 @@
 package my.project.util.metrics;
 
+import io.prometheus.client.Collector;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Counter;
-import io.prometheus.client.Histogram;
 
-import my.project.util.exception.exceptions.InvalidMetricsConfigurationException;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.*;
 
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Aspect
 @Component
 public class MetricsAspect {
 
+    private final MetricsProperties properties;
+
     private final Counter requestCount;
     private final Counter errorCount;
 
-    private final Counter checkNameAvailabilityRequestCount;
-    private final Counter addUserRequestCount;
-    private final Counter getUserRequestCount;
-    private final Counter updateUserRequestCount;
-    private final Counter deleteUserRequestCount;
+    private final Counter endpointRequestCount;
+    private final LabeledHistogram endpointRequestHistogram;
 
-    private final Histogram checkNameAvailabiltyRequestHistogram;
-    private final Histogram addUserRequestHistogram;
-    private final Histogram getUserRequestHistogram;
-    private final Histogram updateUserRequestHistogram;
-    private final Histogram deleteUserRequestHistogram;
+    // metric handles resolved once per annotated method, the hot path is a single map lookup
+    private final Map<Method, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
 
     @Autowired
-    public MetricsAspect(CollectorRegistry collectorRegistry) {
+    public MetricsAspect(CollectorRegistry collectorRegistry, MetricsProperties properties) {
+        this.properties = properties;
+
         requestCount = Counter.build()
                 .name("request_count")
                 .help("Total number of requests to user service")
@@ -45,115 +49,132 @@ public class MetricsAspect {
 
         /**********************************************************/
 
-        checkNameAvailabilityRequestCount = Counter.build()
-                .name("name_availability_request_count")
-                .help("Total number of requests to check name availability")
+        endpointRequestCount = Counter.build()
+                .name("endpoint_request_count")
+                .help("Total number of requests by endpoint and outcome")
+                .labelNames("endpoint", "outcome")
                 .register(collectorRegistry);
 
-        addUserRequestCount = Counter.build()
-                .name("add_user_request_count")
-                .help("Total number of requests to add user")
-                .register(collectorRegistry);
+        endpointRequestHistogram = new LabeledHistogram(
+                "endpoint_request_histogram",
+                "Histogram showing request time by endpoint and outcome",
+                "endpoint", "outcome"
+        ).register(collectorRegistry);
 
-        getUserRequestCount = Counter.build()
-                .name("get_user_request_count")
-                .help("Total number of requests to get user")
-                .register(collectorRegistry);
+    }
 
-        updateUserRequestCount = Counter.build()
-                .name("update_user_request_count")
-                .help("Total number of requests to update user")
-                .register(collectorRegistry);
+    /**
+     * Asynchronous handlers are measured until their returned stage completes, and streaming
+     * ones until their body has been written, not until the handler method returns. Only thrown exceptions count as errors, a 4xx response is a
+     * client error.
+     */
+    @Around("@annotation(my.project.util.metrics.CollectMetrics)")
+    public Object collectMetrics(ProceedingJoinPoint jp) throws Throwable {
+        EndpointMetrics metrics = resolve(jp);
 
-        deleteUserRequestCount = Counter.build()
-                .name("delete_user_request_count")
-                .help("Total number of requests to delete user")
-                .register(collectorRegistry);
+        requestCount.inc();
+        long start = System.nanoTime();
 
-        /**********************************************************/
+        Object returned;
 
-        checkNameAvailabiltyRequestHistogram = Histogram.build()
-                .name("name_availability_request_histogram")
-                .help("Histogram showing request time for requesting name availability")
-                .register(collectorRegistry);
+        try {
+            returned = jp.proceed();
 
-        addUserRequestHistogram = Histogram.build()
-                .name("add_user_request_histogram")
-                .help("Histogram showing request time for requesting add user")
-                .register(collectorRegistry);
+        } catch (Throwable t) {
+            complete(metrics, start, null, t);
+            throw t;
 
-        getUserRequestHistogram = Histogram.build()
-                .name("get_user_request_histogram")
-                .help("Histogram showing request time for requesting get user")
-                .register(collectorRegistry);
+        }
 
-        updateUserRequestHistogram = Histogram.build()
-                .name("update_user_request_histogram")
-                .help("Histogram showing request time for requesting update user")
-                .register(collectorRegistry);
-
-        deleteUserRequestHistogram = Histogram.build()
-                .name("delete_user_request_histogram")
-                .help("Histogram showing request time for requesting delete user")
-                .register(collectorRegistry);
+        if (returned instanceof CompletionStage)
+            ((CompletionStage<?>) returned).whenComplete((value, t) -> complete(metrics, start, value, t));
+        else if (isStreaming(returned))
+            return completedAfterStreaming((ResponseEntity<?>) returned, metrics, start);
+        else
+            complete(metrics, start, returned, null);
 
+        return returned;
     }
 
-    @Around("@annotation(my.project.util.metrics.CollectMetrics)")
-    public Object collectMetrics(ProceedingJoinPoint jp) throws Throwable {
-        Histogram.Timer timer;
+    private static boolean isStreaming(Object returned) {
+        return returned instanceof ResponseEntity
+                && ((ResponseEntity<?>) returned).getBody() instanceof StreamingResponseBody;
+    }
 
-        ControllerEndpoints endPoint =
-                ((MethodSignature) jp.getSignature())
-                        .getMethod()
-                        .getAnnotation(CollectMetrics.class)
-                        .endPoint();
+    /**
+     * Exports and imports do their work in the body, on another thread after the handler has
+     * returned. A stream that fails part way counts as an error.
+     */
+    private ResponseEntity<StreamingResponseBody> completedAfterStreaming(ResponseEntity<?> response,
+                                                                         EndpointMetrics metrics, long start) {
+        StreamingResponseBody body = (StreamingResponseBody) response.getBody();
 
-        requestCount.inc();
+        StreamingResponseBody measured = out -> {
+            Throwable failure = null;
 
-        switch (endPoint) {
-            case CHECK_USERNAME_AVAILABILITY:
-                timer = checkNameAvailabiltyRequestHistogram.startTimer();
-                checkNameAvailabilityRequestCount.inc();
-                break;
+            try {
+                body.writeTo(out);
 
-            case ADD_USER:
-                timer = addUserRequestHistogram.startTimer();
-                addUserRequestCount.inc();
-                break;
+            } catch (Throwable t) {
+                failure = t;
+                throw t;
 
-            case GET_USER:
-                timer = getUserRequestHistogram.startTimer();
-                getUserRequestCount.inc();
-                break;
+            } finally {
+                complete(metrics, start, response, failure);
 
-            case UPDATE_USER:
-                timer = updateUserRequestHistogram.startTimer();
-                updateUserRequestCount.inc();
-                break;
+            }
+        };
 
-            case DELETE_USER:
-                timer = deleteUserRequestHistogram.startTimer();
-                deleteUserRequestCount.inc();
-                break;
+        return new ResponseEntity<>(measured, response.getHeaders(), response.getStatusCode());
+    }
 
-            default:
-                throw new InvalidMetricsConfigurationException();
+    private void complete(EndpointMetrics metrics, long start, Object returned, Throwable t) {
+        RequestOutcome outcome;
 
+        if (t != null) {
+            errorCount.inc();
+            outcome = RequestOutcome.ERROR;
+        } else if (returned instanceof ResponseEntity && ((ResponseEntity<?>) returned).getStatusCode().is4xxClientError()) {
+            outcome = RequestOutcome.CLIENT_ERROR;
+        } else {
+            outcome = RequestOutcome.SUCCESS;
         }
 
-        try {
-            return jp.proceed();
+        metrics.record(outcome, System.nanoTime() - start);
+    }
 
-        } catch (Throwable t) {
-            errorCount.inc();
-            throw t;
+    private EndpointMetrics resolve(ProceedingJoinPoint jp) {
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        EndpointMetrics metrics = endpoints.get(method);
+
+        if (metrics == null)
+            metrics = endpoints.computeIfAbsent(method, this::createEndpointMetrics);
+
+        return metrics;
+    }
 
-        } finally {
-            timer.observeDuration();
+    private EndpointMetrics createEndpointMetrics(Method method) {
+        ControllerEndpoints endPoint = method.getAnnotation(CollectMetrics.class).endPoint();
 
+        return new EndpointMetrics(ControllerEndpoints.labelOf(method), properties.bucketsFor(endPoint));
+    }
+
+    private final class EndpointMetrics {
+
+        private final Counter.Child[] counts = new Counter.Child[RequestOutcome.values().length];
+        private final LabeledHistogram.Child[] durations = new LabeledHistogram.Child[RequestOutcome.values().length];
+
+        private EndpointMetrics(String label, double[] buckets) {
+            for (RequestOutcome outcome : RequestOutcome.values()) {
+                counts[outcome.ordinal()] = endpointRequestCount.labels(label, outcome.label());
+                durations[outcome.ordinal()] = endpointRequestHistogram.child(buckets, label, outcome.label());
+            }
         }
 
+        private void record(RequestOutcome outcome, long elapsedNanos) {
+            counts[outcome.ordinal()].inc();
+            durations[outcome.ordinal()].observe(elapsedNanos / Collector.NANOSECONDS_PER_SECOND);
+        }
     }
 
 }
@@ -0,0 +1,30 @@
+package my.project.util.metrics;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@Component
+@ConfigurationProperties(prefix = "user-service.metrics")
+public class MetricsProperties {
+
+    /**
+     * Request duration bucket upper bounds in seconds, used by any endpoint without its own
+     * entry in {@link #buckets}.
+     */
+    private double[] defaultBuckets = { .005, .01, .025, .05, .075, .1, .25, .5, .75, 1, 2.5, 5, 7.5, 10 };
+
+    private Map<ControllerEndpoints, double[]> buckets = new EnumMap<>(ControllerEndpoints.class);
+
+    public double[] bucketsFor(ControllerEndpoints endPoint) {
+        return buckets.getOrDefault(endPoint, defaultBuckets);
+    }
+
+}
@@ -0,0 +1,16 @@
+package my.project.util.metrics;
+
+import java.util.Locale;
+
+public enum RequestOutcome {
+    SUCCESS,
+    /** answered with a 4xx, an expected outcome such as an unknown id or a taken name */
+    CLIENT_ERROR,
+    ERROR;
+
+    private final String label = name().toLowerCase(Locale.ROOT);
+
+    public String label() {
+        return label;
+    }
+}
@@ -0,0 +1,64 @@
+package my.project.util.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.jdbc.init.DataSourceScriptDatabaseInitializer;
+import org.springframework.boot.sql.init.DatabaseInitializationMode;
+import org.springframework.boot.sql.init.DatabaseInitializationSettings;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces Boot's single DataSource once {@code user-service.sharding.shards} lists a database:
+ * one Hikari pool per shard behind a {@link ShardRoutingDataSource}, and the schema management
+ * Hibernate does on startup repeated for every shard. data.sql is not run, its rows would all
+ * land on the first shard whatever their names hash to.
+ */
+@Configuration
+@ConditionalOnProperty(name = "user-service.sharding.shards[0].url")
+public class ShardDataSourceConfig {
+
+    @Bean
+    public ShardRoutingDataSource dataSource(ShardingProperties properties) {
+        List<DataSource> shards = new ArrayList<>();
+
+        for (ShardingProperties.Shard shard : properties.getShards()) {
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("shard-" + shards.size());
+            pool.setJdbcUrl(shard.getUrl());
+            pool.setUsername(shard.getUsername());
+            pool.setPassword(shard.getPassword());
+            pool.setMaximumPoolSize(shard.getMaximumPoolSize());
+
+            shards.add(pool);
+        }
+
+        return new ShardRoutingDataSource(shards);
+    }
+
+    // takes the place of Boot's initializer, whatever spring.sql.init.mode says
+    @Bean
+    public DataSourceScriptDatabaseInitializer dataSourceScriptDatabaseInitializer(ShardRoutingDataSource dataSource) {
+        DatabaseInitializationSettings settings = new DatabaseInitializationSettings();
+        settings.setMode(DatabaseInitializationMode.NEVER);
+
+        return new DataSourceScriptDatabaseInitializer(dataSource, settings);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer shardSchemaCustomizer(ShardingProperties properties) {
+        ShardSchemaIntegrator integrator = new ShardSchemaIntegrator(properties.shardCount());
+
+        return hibernateProperties -> hibernateProperties.put(
+                "hibernate.integrator_provider", (IntegratorProvider) () -> List.of(integrator));
+    }
+
+}
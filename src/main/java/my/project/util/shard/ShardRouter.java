@@ -0,0 +1,191 @@
+package my.project.util.shard;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+
+import my.project.util.id.IdAllocator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Decides which shard owns a user. A new user is written to the shard its username hashes to,
+ * and that shard is encoded in the id it is given, so lookups by id never need the name.
+ *
+ * Queries that have to see every shard (or several of them) are run in parallel on a small pool
+ * of gather threads, each with its shard bound in {@link ShardContext}.
+ */
+@Component
+public class ShardRouter {
+
+    private final int shardCount;
+    private final IdAllocator idAllocator;
+    private final List<Integer> allShards;
+
+    private final ExecutorService gatherExecutor;
+
+    private final Counter routedCount;
+    private final Counter gatherCount;
+
+    @Autowired
+    public ShardRouter(ShardingProperties properties, IdAllocator idAllocator, CollectorRegistry collectorRegistry) {
+        this.shardCount = properties.shardCount();
+        this.idAllocator = idAllocator;
+
+        List<Integer> shards = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++)
+            shards.add(shard);
+        this.allShards = List.copyOf(shards);
+
+        if (shardCount > 1) {
+            AtomicInteger threads = new AtomicInteger();
+            int gatherThreads = properties.getGatherThreads() > 0 ? properties.getGatherThreads() : shardCount;
+
+            // bounded by the callers: every task belongs to a request already admitted by the limiters
+            this.gatherExecutor = Executors.newFixedThreadPool(gatherThreads, r -> {
+                Thread t = new Thread(r, "shard-gather-" + threads.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.gatherExecutor = null;
+        }
+
+        routedCount = Counter.build()
+                .name("shard_routed_count")
+                .help("Repository calls sent to each shard, a call that fans out counts once per shard")
+                .labelNames("shard")
+                .register(collectorRegistry);
+
+        gatherCount = Counter.build()
+                .name("shard_gather_count")
+                .help("Repository calls that had to fan out to more than one shard")
+                .register(collectorRegistry);
+    }
+
+    /**
+     * A router over a single database, for code running outside of Spring such as unit tests
+     * and benchmarks.
+     */
+    public static ShardRouter unsharded() {
+        return new ShardRouter(new ShardingProperties(), null, new CollectorRegistry());
+    }
+
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    public List<Integer> allShards() {
+        return allShards;
+    }
+
+    /**
+     * Shard a username hashes to. String#hashCode is fixed by its spec, so this never changes
+     * between releases; the bits are mixed first because its low bits spread poorly for names
+     * that only differ at the end.
+     */
+    public int shardOf(String username) {
+        if (shardCount == 1)
+            return 0;
+
+        int h = username.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+
+        return Math.floorMod(h, shardCount);
+    }
+
+    /**
+     * Shard encoded in {@code userID}, -1 when it names a shard that does not exist. Ids come
+     * from clients, so the latter only means there is no such user.
+     */
+    public int shardOf(long userID) {
+        if (shardCount == 1)
+            return 0;
+
+        int shard = idAllocator.shardOf(userID);
+        return shard < shardCount ? shard : -1;
+    }
+
+    public <T> T callOn(int shard, Supplier<T> work) {
+        routedCount.labels(Integer.toString(shard)).inc();
+        return ShardContext.callOn(shard, work);
+    }
+
+    public void runOn(int shard, Runnable work) {
+        routedCount.labels(Integer.toString(shard)).inc();
+        ShardContext.runOn(shard, work);
+    }
+
+    /**
+     * Runs {@code query} once for each of {@code shards}, in parallel when there is more than
+     * one, and returns the results in the order of {@code shards}. The first failure is rethrown
+     * after every query has finished.
+     */
+    public <T> List<T> gather(List<Integer> shards, IntFunction<T> query) {
+
+        if (shards.isEmpty())
+            return new ArrayList<>();
+
+        if (shards.size() == 1) {
+            int shard = shards.get(0);
+            List<T> result = new ArrayList<>(1);
+            result.add(callOn(shard, () -> query.apply(shard)));
+            return result;
+        }
+
+        gatherCount.inc();
+
+        List<CompletableFuture<T>> queries = new ArrayList<>(shards.size());
+        for (int shard : shards)
+            queries.add(CompletableFuture.supplyAsync(() -> callOn(shard, () -> query.apply(shard)), gatherExecutor));
+
+        List<T> results = new ArrayList<>(shards.size());
+        RuntimeException failure = null;
+
+        for (CompletableFuture<T> pending : queries) {
+            try {
+                results.add(pending.join());
+
+            } catch (CompletionException e) {
+                if (failure == null)
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+
+            }
+        }
+
+        if (failure != null)
+            throw failure;
+
+        return results;
+    }
+
+    public <T> List<T> gatherAll(IntFunction<T> query) {
+        return gather(allShards, query);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (gatherExecutor != null)
+            gatherExecutor.shutdownNow();
+    }
+
+}
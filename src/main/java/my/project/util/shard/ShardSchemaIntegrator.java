@@ -0,0 +1,40 @@
+package my.project.util.shard;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+
+import java.util.Map;
+
+/**
+ * Hibernate only manages the schema of the connection it is given, which is shard 0. This runs
+ * the same hbm2ddl action (create, update, validate, ...) on every other shard while the session
+ * factory is being built, before shard 0 gets its turn.
+ *
+ * Drops at shutdown are only done for shard 0, the other shards keep their tables.
+ */
+public class ShardSchemaIntegrator implements Integrator {
+
+    private final int shardCount;
+
+    public ShardSchemaIntegrator(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        Map<?, ?> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+
+        for (int shard = 1; shard < shardCount; shard++)
+            ShardContext.runOn(shard, () -> SchemaManagementToolCoordinator.process(
+                    metadata, serviceRegistry, settings, dropAction -> {}));
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+}
@@ -0,0 +1,333 @@
+package my.project.util.shard;
+
+import my.project.entity.User;
+import my.project.entity.dtos.UserResponse;
+import my.project.web.UserRepository;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Routes {@link UserRepository} calls to the shard that owns the data. Calls by id go to the
+ * shard in the id, calls by name to the shard the name hashes to, and listings ask every shard
+ * and merge the results. Within a shard each call is still the repository's own query and
+ * transaction.
+ *
+ * Renames and deletes of a user whose name lives on another shard are a few writes on different
+ * shards (see the redirect queries on {@link UserRepository}). They run in an order that never
+ * lets two users hold one name, but a failure half way through can leave a redirect behind,
+ * which keeps that name taken until the row is removed.
+ *
+ * Calls made with a shard already bound in {@link ShardContext} go straight to that shard; that
+ * is how work spanning several calls, such as a batch insert or an export, runs one shard at a
+ * time. With a single shard nothing is routed at all.
+ *
+ * Every method of the repository, inherited ones included, either has a route here or is
+ * listed as single shard, which the constructor checks; a method added to the repository
+ * without one stops the application from starting.
+ */
+@Aspect
+@Component
+public class ShardedUserRepositoryAspect {
+
+    /**
+     * Methods that only make sense against one shard at a time, such as the batch writes and
+     * the export cursor. Their callers bind a shard first, called without one they fail.
+     */
+    private static final Set<String> SINGLE_SHARD = Set.of(
+            "saveAll(Iterable)", "saveAllAndFlush(Iterable)", "flush()", "count()",
+            "streamBetween(Long,Long)", "insertRedirect(Long,String)", "renameRedirect(Long,String,String)",
+            "deleteRedirect(Long,String)", "delete(Object)", "deleteById(Object)", "deleteAllById(Iterable)",
+            "deleteAll()", "deleteAll(Iterable)", "deleteAllInBatch()", "deleteAllInBatch(Iterable)",
+            "deleteInBatch(Iterable)", "deleteAllByIdInBatch(Iterable)", "findAll(Sort)", "findAll(Pageable)",
+            "findAll(Example)", "findAll(Example,Sort)", "findAll(Example,Pageable)", "findOne(Example)",
+            "count(Example)", "exists(Example)"
+    );
+
+    private final ShardRouter router;
+
+    private final Map<String, Route> routes = new HashMap<>();
+
+    @Autowired
+    @SuppressWarnings("unchecked")
+    public ShardedUserRepositoryAspect(ShardRouter router) {
+        this.router = router;
+
+        routes.put("findResponseById(Long)", (repo, args) -> onShardOf((Long) args[0], Optional.empty(), shard -> repo.findResponseById((Long) args[0])));
+        routes.put("findVersionById(Long)", (repo, args) -> onShardOf((Long) args[0], Optional.empty(), shard -> repo.findVersionById((Long) args[0])));
+        routes.put("findById(Object)", (repo, args) -> onShardOf((Long) args[0], Optional.empty(), shard -> repo.findById((Long) args[0])));
+        routes.put("existsById(Object)", (repo, args) -> onShardOf((Long) args[0], false, shard -> repo.existsById((Long) args[0])));
+        routes.put("getById(Object)", (repo, args) -> onShardOf((Long) args[0], null, shard -> repo.getById((Long) args[0])));
+        routes.put("getOne(Object)", (repo, args) -> onShardOf((Long) args[0], null, shard -> repo.getById((Long) args[0])));
+        routes.put("findAllById(Iterable)", (repo, args) -> findAllById(repo, (Iterable<Long>) args[0]));
+
+        routes.put("existsByUsername(String)", (repo, args) -> router.callOn(router.shardOf((String) args[0]), () -> repo.existsByUsername((String) args[0])));
+        routes.put("findByUsername(String)", (repo, args) -> findByUsername(repo, (String) args[0]));
+        routes.put("findExistingUsernames(Collection)", (repo, args) -> findExistingUsernames(repo, (Collection<String>) args[0]));
+
+        routes.put("save(Object)", (repo, args) -> router.callOn(router.shardOf(((User) args[0]).getUsername()), () -> repo.save((User) args[0])));
+        routes.put("saveAndFlush(Object)", (repo, args) -> router.callOn(router.shardOf(((User) args[0]).getUsername()), () -> repo.saveAndFlush((User) args[0])));
+
+        routes.put("updateUsernameIfVersion(Long,String,Long)", (repo, args) -> rename(repo, (Long) args[0], (String) args[1], (Long) args[2]));
+        routes.put("deleteUserById(Long)", (repo, args) -> delete(repo, (Long) args[0], null));
+        routes.put("deleteUserByIdIfVersion(Long,Long)", (repo, args) -> delete(repo, (Long) args[0], (Long) args[1]));
+
+        routes.put("findPageAfter(Long,Pageable)", (repo, args) -> findPageAfter(repo, (Long) args[0], (Pageable) args[1], false));
+        routes.put("findVersionedPageAfter(Long,Pageable)", (repo, args) -> findPageAfter(repo, (Long) args[0], (Pageable) args[1], true));
+        routes.put("findByUsernamePrefix(String,Pageable)", (repo, args) -> findByUsernamePrefix(repo, (String) args[0], (Pageable) args[1]));
+        routes.put("findAll()", (repo, args) -> concat(router.gatherAll(shard -> withoutRedirectRows(shard, repo.findAll()))));
+
+        checkEveryMethodRouted();
+    }
+
+    /**
+     * Fails startup, sharded or not, when a repository method has neither a route nor a place
+     * in {@link #SINGLE_SHARD}, so a new query cannot reach production unrouted.
+     */
+    private void checkEveryMethodRouted() {
+        Set<String> declared = new TreeSet<>();
+        for (Method method : UserRepository.class.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers()))
+                declared.add(keyOf(method));
+        }
+
+        Set<String> unrouted = new TreeSet<>(declared);
+        unrouted.removeAll(routes.keySet());
+        unrouted.removeAll(SINGLE_SHARD);
+
+        Set<String> unknown = new TreeSet<>(routes.keySet());
+        unknown.addAll(SINGLE_SHARD);
+        unknown.removeAll(declared);
+
+        if (!unrouted.isEmpty() || !unknown.isEmpty())
+            throw new IllegalStateException("ShardedUserRepositoryAspect is out of date with UserRepository, unrouted: "
+                    + unrouted + ", no such method: " + unknown);
+    }
+
+    private static String keyOf(Method method) {
+        StringJoiner parameters = new StringJoiner(",", method.getName() + "(", ")");
+        for (Class<?> type : method.getParameterTypes())
+            parameters.add(type.getSimpleName());
+
+        return parameters.toString();
+    }
+
+    @Around("target(my.project.web.UserRepository)")
+    public Object route(ProceedingJoinPoint jp) throws Throwable {
+
+        if (!router.isSharded() || ShardContext.isBound())
+            return jp.proceed();
+
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+
+        if (method.getDeclaringClass() == Object.class)
+            return jp.proceed();
+
+        String key = keyOf(method);
+        Route route = routes.get(key);
+
+        if (route == null)
+            throw new IllegalStateException("UserRepository#" + key
+                    + " runs against a single shard, call it with the shard bound in ShardContext");
+
+        // the repository proxy underneath this advice, calls on it are not routed again
+        return route.apply((UserRepository) jp.getTarget(), jp.getArgs());
+    }
+
+    private Object onShardOf(Long userID, Object absent, IntFunction<Object> query) {
+        int shard = router.shardOf(userID);
+
+        return shard < 0 ? absent : router.callOn(shard, () -> query.apply(shard));
+    }
+
+    private Optional<User> findByUsername(UserRepository repo, String username) {
+        int shard = router.shardOf(username);
+        Optional<User> user = router.callOn(shard, () -> repo.findByUsername(username));
+
+        if (user.isEmpty() || !isRedirect(user.get().getUserID(), shard))
+            return user;
+
+        Long userID = user.get().getUserID();
+        return router.callOn(router.shardOf(userID), () -> repo.findById(userID));
+    }
+
+    private List<String> findExistingUsernames(UserRepository repo, Collection<String> usernames) {
+        Map<Integer, List<String>> byShard = new TreeMap<>();
+
+        for (String username : usernames)
+            byShard.computeIfAbsent(router.shardOf(username), shard -> new ArrayList<>()).add(username);
+
+        return concat(router.gather(new ArrayList<>(byShard.keySet()),
+                shard -> repo.findExistingUsernames(byShard.get(shard))));
+    }
+
+    /*
+     * Every shard returns its own first page and the pages are merged. Dropping redirects cannot
+     * leave a shard short of a row the merged page needs: each redirect ahead of a row stands
+     * for a user (its real row, on another shard) that is also ahead of it in the merged order.
+     */
+
+    private List<UserResponse> findPageAfter(UserRepository repo, Long after, Pageable pageable, boolean versioned) {
+        List<List<UserResponse>> pages = router.gatherAll(shard -> withoutRedirects(shard, versioned
+                ? repo.findVersionedPageAfter(after, pageable)
+                : repo.findPageAfter(after, pageable)));
+
+        return merge(pages, Comparator.comparing(UserResponse::getUserID), pageable.getPageSize());
+    }
+
+    private List<UserResponse> findByUsernamePrefix(UserRepository repo, String prefix, Pageable pageable) {
+        List<List<UserResponse>> pages = router.gatherAll(shard -> withoutRedirects(shard, repo.findByUsernamePrefix(prefix, pageable)));
+
+        return merge(pages, Comparator.comparing(UserResponse::getUsername), pageable.getPageSize());
+    }
+
+    /**
+     * The new name is taken on its own shard first, so a name that is in use fails there with the
+     * usual DataIntegrityViolationException before the user changes. The row is then updated only
+     * if it is still at {@code expectedVersion}, otherwise the name is given back and 0 returned.
+     * The old name is released last.
+     */
+    private int rename(UserRepository repo, Long userID, String username, Long expectedVersion) {
+        int shard = router.shardOf(userID);
+        int nameShard = router.shardOf(username);
+
+        if (shard < 0)
+            return 0;
+
+        Optional<UserResponse> current = router.callOn(shard, () -> repo.findResponseById(userID));
+
+        if (current.isEmpty() || !expectedVersion.equals(current.get().getVersion()))
+            return 0;
+
+        String previous = current.get().getUsername();
+        int previousShard = router.shardOf(previous);
+
+        Runnable release = () -> {};
+
+        if (nameShard != shard) {
+            if (previousShard == nameShard && router.callOn(nameShard, () -> repo.renameRedirect(userID, previous, username)) == 1) {
+                release = () -> router.callOn(nameShard, () -> repo.renameRedirect(userID, username, previous));
+            } else {
+                router.callOn(nameShard, () -> repo.insertRedirect(userID, username));
+                release = () -> router.callOn(nameShard, () -> repo.deleteRedirect(userID, username));
+            }
+        }
+
+        int updated;
+        try {
+            updated = router.callOn(shard, () -> repo.updateUsernameIfVersion(userID, username, expectedVersion));
+
+        } catch (RuntimeException e) {
+            release.run();
+            throw e;
+
+        }
+
+        if (updated == 0) {
+            release.run();
+            return 0;
+        }
+
+        if (previousShard != shard && previousShard != nameShard)
+            router.callOn(previousShard, () -> repo.deleteRedirect(userID, previous));
+
+        return 1;
+    }
+
+    private int delete(UserRepository repo, Long userID, Long expectedVersion) {
+        int shard = router.shardOf(userID);
+
+        if (shard < 0)
+            return 0;
+
+        while (true) {
+            Optional<UserResponse> current = router.callOn(shard, () -> repo.findResponseById(userID));
+
+            if (current.isEmpty())
+                return 0;
+
+            Long version = current.get().getVersion();
+            String username = current.get().getUsername();
+
+            if (expectedVersion != null && !expectedVersion.equals(version))
+                return 0;
+
+            if (router.callOn(shard, () -> repo.deleteUserByIdIfVersion(userID, version)) == 0) {
+                if (expectedVersion != null)
+                    return 0;
+
+                continue;
+            }
+
+            int nameShard = router.shardOf(username);
+            if (nameShard != shard)
+                router.callOn(nameShard, () -> repo.deleteRedirect(userID, username));
+
+            return 1;
+        }
+    }
+
+    private List<User> findAllById(UserRepository repo, Iterable<Long> userIDs) {
+        Map<Integer, List<Long>> byShard = new TreeMap<>();
+
+        for (Long userID : userIDs) {
+            int shard = router.shardOf(userID);
+            if (shard >= 0)
+                byShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(userID);
+        }
+
+        return concat(router.gather(new ArrayList<>(byShard.keySet()),
+                shard -> repo.findAllById(byShard.get(shard))));
+    }
+
+    private boolean isRedirect(Long userID, int shard) {
+        return router.shardOf(userID) != shard;
+    }
+
+    private List<UserResponse> withoutRedirects(int shard, List<UserResponse> users) {
+        List<UserResponse> owned = new ArrayList<>(users);
+        owned.removeIf(user -> isRedirect(user.getUserID(), shard));
+
+        return owned;
+    }
+
+    private List<User> withoutRedirectRows(int shard, List<User> users) {
+        List<User> owned = new ArrayList<>(users);
+        owned.removeIf(user -> isRedirect(user.getUserID(), shard));
+
+        return owned;
+    }
+
+    private static <T> List<T> concat(List<List<T>> lists) {
+        List<T> all = new ArrayList<>();
+        for (List<T> list : lists)
+            all.addAll(list);
+
+        return all;
+    }
+
+    private static <T> List<T> merge(List<List<T>> sorted, Comparator<T> order, int limit) {
+        List<T> all = concat(sorted);
+        all.sort(order);
+
+        return all.size() > limit ? new ArrayList<>(all.subList(0, limit)) : all;
+    }
+
+    @FunctionalInterface
+    private interface Route {
+
+        Object apply(UserRepository repo, Object[] args);
+    }
+
+}
@@ -0,0 +1,53 @@
+package my.project.util.shard;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@Component
+@ConfigurationProperties(prefix = "user-service.sharding")
+public class ShardingProperties {
+
+    /**
+     * One entry per shard database, in shard order. With none configured the service runs on the
+     * single spring.datasource and nothing is routed. The order must never change once users
+     * exist, the position of a shard is encoded in the ids of its users.
+     */
+    private List<Shard> shards = new ArrayList<>();
+
+    /** worker threads for queries that fan out to every shard, 0 means one per shard */
+    private int gatherThreads = 0;
+
+    public int shardCount() {
+        return Math.max(1, shards.size());
+    }
+
+    /** bits of every id spent on the shard number */
+    public int shardBits() {
+        return 32 - Integer.numberOfLeadingZeros(shardCount() - 1);
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Shard {
+
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+
+        public Shard(String url, String username, String password) {
+            this.url = url;
+            this.username = username;
+            this.password = password;
+        }
+    }
+
+}
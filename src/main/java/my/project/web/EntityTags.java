@@ -0,0 +1,54 @@
+package my.project.web;
+
+/**
+ * Strong ETags for users, the quoted version number, e.g. {@code "3"}.
+ */
+final class EntityTags {
+
+    private EntityTags() {
+    }
+
+    static String of(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * If-None-Match: true when any listed tag, weak or strong, is for {@code version}.
+     */
+    static boolean anyMatch(String header, Long version) {
+        if (header.trim().equals("*"))
+            return true;
+
+        String tag = of(version);
+
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+
+            if (candidate.startsWith("W/"))
+                candidate = candidate.substring(2);
+
+            if (candidate.equals(tag))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * If-Match: the version named by a single strong tag, null for {@code *} (any version).
+     *
+     * @throws NumberFormatException when the header is not a single strong tag of this service
+     */
+    static Long requiredVersion(String header) {
+        String tag = header.trim();
+
+        if (tag.equals("*"))
+            return null;
+
+        if (tag.length() < 3 || !tag.startsWith("\"") || !tag.endsWith("\""))
+            throw new NumberFormatException(tag);
+
+        return Long.valueOf(tag.substring(1, tag.length() - 1));
+    }
+
+}
@@ -0,0 +1,74 @@
+package my.project.web;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import my.project.util.exception.exceptions.DuplicateUsernameException;
+import my.project.util.exception.exceptions.PreconditionFailedException;
+import my.project.util.exception.exceptions.UserNotFoundException;
+
+/**
+ * Outcome of a service call whose failures are part of normal traffic (stale ids, taken names),
+ * returned instead of thrown so the controller can map them straight to a status code. The
+ * failure results carry no value and are shared.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ServiceResult<T> {
+
+    public enum Status {
+        OK,
+        NOT_FOUND,
+        CONFLICT,
+        PRECONDITION_FAILED
+    }
+
+    private static final ServiceResult<?> NOT_FOUND = new ServiceResult<>(Status.NOT_FOUND, null);
+    private static final ServiceResult<?> CONFLICT = new ServiceResult<>(Status.CONFLICT, null);
+    private static final ServiceResult<?> PRECONDITION_FAILED = new ServiceResult<>(Status.PRECONDITION_FAILED, null);
+
+    private final Status status;
+    private final T value;
+
+    public static <T> ServiceResult<T> ok(T value) {
+        return new ServiceResult<>(Status.OK, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ServiceResult<T> notFound() {
+        return (ServiceResult<T>) NOT_FOUND;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ServiceResult<T> conflict() {
+        return (ServiceResult<T>) CONFLICT;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ServiceResult<T> preconditionFailed() {
+        return (ServiceResult<T>) PRECONDITION_FAILED;
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    /**
+     * The value, or the failure as its (shared, stackless) exception for callers that prefer to
+     * throw.
+     */
+    public T orElseThrow() {
+        switch (status) {
+            case OK:
+                return value;
+            case NOT_FOUND:
+                throw UserNotFoundException.INSTANCE;
+            case CONFLICT:
+                throw DuplicateUsernameException.INSTANCE;
+            default:
+                throw PreconditionFailedException.INSTANCE;
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package my.project.web;
+
+import my.project.entity.User;
+import my.project.entity.dtos.BulkCreateResult;
+import my.project.entity.dtos.UserResponse;
+
+import my.project.util.shard.ShardRouter;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * Creates many users in a single transaction: one query to find which names already exist,
+ * then the new rows are flushed as JDBC batches (see hibernate.jdbc.batch_size).
+ *
+ * When sharded, the names are split by the shard they hash to and each shard gets its own
+ * transaction, all of them in parallel.
+ */
+@Component
+public class UserBatchWriter {
+
+    private final UserRepository userRepo;
+    private final ShardRouter shardRouter;
+    private final TransactionOperations transaction;
+
+    @Autowired
+    public UserBatchWriter(UserRepository userRepo, ShardRouter shardRouter, PlatformTransactionManager transactionManager) {
+        this(userRepo, shardRouter, new TransactionTemplate(transactionManager));
+    }
+
+    public UserBatchWriter(UserRepository userRepo, ShardRouter shardRouter, TransactionOperations transaction) {
+        this.userRepo = userRepo;
+        this.shardRouter = shardRouter;
+        this.transaction = transaction;
+    }
+
+    /**
+     * Results are returned in the order the names were given. A name that already exists,
+     * or that appears earlier in the same list, is reported as a conflict.
+     */
+    public List<BulkCreateResult> createAll(List<String> usernames) {
+
+        if (usernames.isEmpty())
+            return Collections.emptyList();
+
+        if (!shardRouter.isSharded())
+            return transaction.execute(status -> create(usernames));
+
+        Map<Integer, List<String>> byShard = new TreeMap<>();
+        for (String username : usernames)
+            byShard.computeIfAbsent(shardRouter.shardOf(username), shard -> new ArrayList<>()).add(username);
+
+        List<Integer> shards = new ArrayList<>(byShard.keySet());
+        List<List<BulkCreateResult>> created = shardRouter.gather(shards, shard -> createOnShard(byShard.get(shard)));
+
+        Map<Integer, Iterator<BulkCreateResult>> resultsByShard = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++)
+            resultsByShard.put(shards.get(i), created.get(i).iterator());
+
+        List<BulkCreateResult> results = new ArrayList<>(usernames.size());
+        for (String username : usernames)
+            results.add(resultsByShard.get(shardRouter.shardOf(username)).next());
+
+        return results;
+    }
+
+    /*
+     * Shards commit on their own, so a caller retrying the whole batch would find the names of
+     * shards that already committed taken. The retry after a concurrent create is done here,
+     * for the one shard that failed.
+     */
+    private List<BulkCreateResult> createOnShard(List<String> usernames) {
+        try {
+            return transaction.execute(status -> create(usernames));
+        } catch (DataIntegrityViolationException e) {
+            if (!Usernames.isTaken(e))
+                throw e;
+
+            return transaction.execute(status -> create(usernames));
+        }
+    }
+
+    private List<BulkCreateResult> create(List<String> usernames) {
+
+        Set<String> requested = new LinkedHashSet<>(usernames);
+        Set<String> existing = new HashSet<>(userRepo.findExistingUsernames(requested));
+
+        List<User> newUsers = new ArrayList<>(requested.size());
+        for (String username : requested) {
+            if (!existing.contains(username))
+                newUsers.add(new User(username));
+        }
+
+        Map<String, UserResponse> created = new HashMap<>();
+        for (User saved : userRepo.saveAll(newUsers))
+            created.put(saved.getUsername(), new UserResponse(saved));
+
+        userRepo.flush();
+
+        List<BulkCreateResult> results = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            UserResponse user = created.remove(username);
+
+            results.add(user == null
+                    ? BulkCreateResult.conflict(username)
+                    : BulkCreateResult.created(user));
+        }
+
+        return results;
+    }
+
+}
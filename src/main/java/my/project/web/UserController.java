@@ -1,64 +1,229 @@
 package my.project.web;
 
+import my.project.entity.dtos.BulkCreateResult;
 import my.project.entity.dtos.UpdateUserRequest;
+import my.project.entity.dtos.UserPage;
 import my.project.entity.dtos.UserResponse;
+import my.project.util.async.UserServiceExecutor;
+import my.project.util.exception.ExceptionResponse;
+import my.project.util.exception.exceptions.DuplicateUsernameException;
+import my.project.util.exception.exceptions.PreconditionFailedException;
+import my.project.util.exception.exceptions.UserNotFoundException;
 import my.project.util.metrics.CollectMetrics;
 import my.project.util.metrics.ControllerEndpoints;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/user")
 public class UserController {
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private static final ExceptionResponse NOT_FOUND = ExceptionResponse.expected(404, UserNotFoundException.INSTANCE);
+    private static final ExceptionResponse CONFLICT = ExceptionResponse.expected(409, DuplicateUsernameException.INSTANCE);
+    private static final ExceptionResponse PRECONDITION_FAILED = ExceptionResponse.expected(412, PreconditionFailedException.INSTANCE);
+
     private final UserService userService;
+    private final UserExporter userExporter;
+    private final UserImporter userImporter;
+    private final UserServiceExecutor executor;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService,
+                          UserExporter userExporter,
+                          UserImporter userImporter,
+                          UserServiceExecutor executor) {
         this.userService = userService;
+        this.userExporter = userExporter;
+        this.userImporter = userImporter;
+        this.executor = executor;
     }
 
     @GetMapping("/{username}")
     @CollectMetrics(endPoint = ControllerEndpoints.CHECK_USERNAME_AVAILABILITY)
-    public ResponseEntity<Void> checkNameAvailability(@PathVariable String username) {
+    public CompletableFuture<ResponseEntity<Void>> checkNameAvailability(@PathVariable String username) {
+
+        return executor.submit(() -> userService.checkUsernameAvailability(username))
+                .thenApply(taken -> taken
+                        ?
+                        ResponseEntity.status(HttpStatus.CONFLICT).build()
+                        :
+                        ResponseEntity.status(HttpStatus.NO_CONTENT).build()
+                );
 
-        return userService.checkUsernameAvailability(username)
-                ?
-                ResponseEntity.status(HttpStatus.CONFLICT).build()
-                :
-                ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+    }
+
+    @PostMapping("/availability")
+    @CollectMetrics(endPoint = ControllerEndpoints.CHECK_USERNAMES_AVAILABILITY)
+    public CompletableFuture<ResponseEntity<Map<String, Boolean>>> checkNamesAvailability(@RequestBody List<String> usernames) {
+        return executor.submit(() -> userService.checkUsernamesAvailability(usernames))
+                .thenApply(ResponseEntity::ok);
+    }
 
+    @GetMapping("/search/{prefix}")
+    @CollectMetrics(endPoint = ControllerEndpoints.SEARCH_USERNAMES)
+    public CompletableFuture<ResponseEntity<List<UserResponse>>> searchUsernames(@PathVariable String prefix,
+                                                                                @RequestParam(required = false) Integer limit) {
+        return executor.submit(() -> userService.searchUsernames(prefix, limit))
+                .thenApply(ResponseEntity::ok);
     }
 
+    /**
+     * A matching If-None-Match is answered with 304 from the version alone, the user itself is
+     * not loaded. The ETag is the same for every representation so it also works as If-Match,
+     * the responses vary by Accept so a cache keeps JSON, CBOR and Smile apart.
+     */
     @GetMapping("/id/{userID}")
     @CollectMetrics(endPoint = ControllerEndpoints.GET_USER)
-    public ResponseEntity<UserResponse> getUser(@PathVariable String userID) {
-        return ResponseEntity.ok(
-                userService.getUserById(Long.valueOf(userID))
-        );
+    public CompletableFuture<ResponseEntity<?>> getUser(@PathVariable String userID,
+                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Long id = Long.valueOf(userID);
+
+        return executor.submit(() -> {
+            if (ifNoneMatch != null) {
+                ServiceResult<Long> version = userService.findUserVersion(id);
+
+                if (!version.isOk())
+                    return failure(version);
+
+                if (EntityTags.anyMatch(ifNoneMatch, version.getValue()))
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                            .eTag(EntityTags.of(version.getValue()))
+                            .varyBy(HttpHeaders.ACCEPT)
+                            .build();
+            }
+
+            ServiceResult<UserResponse> user = userService.findUser(id);
+
+            return user.isOk() ? withETag(ResponseEntity.ok(), user.getValue()) : failure(user);
+        });
+    }
+
+    @GetMapping
+    @CollectMetrics(endPoint = ControllerEndpoints.LIST_USERS)
+    public CompletableFuture<ResponseEntity<UserPage>> listUsers(@RequestParam(required = false) Long after,
+                                                                 @RequestParam(required = false) Integer limit) {
+        return executor.submit(() -> userService.listUsers(after, limit))
+                .thenApply(ResponseEntity::ok);
+    }
+
+    /**
+     * One JSON user per line in id order, pass the last exported id as {@code since} to only
+     * receive users created afterwards. Users appear once older than the export safety lag,
+     * renames and deletes are not exported.
+     */
+    @GetMapping(value = "/export/ndjson", produces = "application/x-ndjson")
+    @CollectMetrics(endPoint = ControllerEndpoints.EXPORT_USERS)
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(required = false) Long since) {
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(out -> userExporter.export(since, out));
     }
 
+    /**
+     * With group commit the create waits for its batch on no thread at all, a worker blocked
+     * on it would keep batches from growing past the number of workers.
+     */
     @PostMapping("/create/{username}")
     @CollectMetrics(endPoint = ControllerEndpoints.ADD_USER)
-    public ResponseEntity<UserResponse> addUser(@PathVariable String username) {
-        return ResponseEntity.status(HttpStatus.CREATED)
-                .body(userService.addUser(username));
+    public CompletableFuture<ResponseEntity<?>> addUser(@PathVariable String username) {
+        CompletableFuture<ServiceResult<UserResponse>> created = userService.isGroupCommitEnabled()
+                ? userService.tryAddUserAsync(username)
+                : executor.submit(() -> userService.tryAddUser(username));
+
+        return created.thenApply(result -> result.isOk()
+                ? ResponseEntity.status(HttpStatus.CREATED).body(result.getValue())
+                : failure(result));
+    }
+
+    @PostMapping("/create")
+    @CollectMetrics(endPoint = ControllerEndpoints.ADD_USERS)
+    public CompletableFuture<ResponseEntity<List<BulkCreateResult>>> addUsers(@RequestBody List<String> usernames) {
+        return executor.submit(() -> userService.addUsers(usernames))
+                .thenApply(ResponseEntity::ok);
+    }
+
+    /**
+     * The upload is read while the report is written, neither is buffered in full.
+     */
+    @PostMapping(value = "/import", consumes = { "text/csv", "application/x-ndjson" }, produces = "application/x-ndjson")
+    @CollectMetrics(endPoint = ControllerEndpoints.IMPORT_USERS)
+    public ResponseEntity<StreamingResponseBody> importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                             InputStream body) {
+        MediaType format = MediaType.parseMediaType(contentType);
+
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(out -> userImporter.importUsers(body, format, out));
     }
 
+    /**
+     * With If-Match the rename only applies to the version the client last saw, otherwise 412.
+     */
     @PatchMapping("/edit")
     @CollectMetrics(endPoint = ControllerEndpoints.UPDATE_USER)
-    public ResponseEntity<UserResponse> updateUser(@RequestBody UpdateUserRequest req) {
-        return ResponseEntity.ok(userService.updateUser(req));
+    public CompletableFuture<ResponseEntity<?>> updateUser(@RequestBody UpdateUserRequest req,
+                                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Long expectedVersion;
+        try {
+            expectedVersion = ifMatch == null ? null : EntityTags.requiredVersion(ifMatch);
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException("If-Match must be a single strong ETag of this user");
+        }
+
+        return executor.submit(() -> {
+            ServiceResult<UserResponse> updated = userService.tryUpdateUser(req, expectedVersion);
+
+            return updated.isOk() ? withETag(ResponseEntity.ok(), updated.getValue()) : failure(updated);
+        });
     }
 
     @DeleteMapping("/{userID}")
     @CollectMetrics(endPoint = ControllerEndpoints.DELETE_USER)
-    public ResponseEntity<Void> deleteUser(@PathVariable String userID) {
-        userService.deleteUser(Long.valueOf(userID));
-        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+    public CompletableFuture<ResponseEntity<?>> deleteUser(@PathVariable String userID) {
+        Long id = Long.valueOf(userID);
+
+        return executor.submit(() -> {
+            ServiceResult<Void> deleted = userService.tryDeleteUser(id);
+
+            return deleted.isOk() ? ResponseEntity.status(HttpStatus.NO_CONTENT).build() : failure(deleted);
+        });
+    }
+
+    /**
+     * Expected failures map straight to their status, with the same body the exception
+     * handlers would have produced (less the time) and without throwing anything.
+     */
+    private static ResponseEntity<?> failure(ServiceResult<?> result) {
+        switch (result.getStatus()) {
+            case NOT_FOUND:
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(NOT_FOUND);
+            case CONFLICT:
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(CONFLICT);
+            case PRECONDITION_FAILED:
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(PRECONDITION_FAILED);
+            default:
+                throw new IllegalStateException("Not a failure: " + result.getStatus());
+        }
+    }
+
+    private static ResponseEntity<UserResponse> withETag(ResponseEntity.BodyBuilder response, UserResponse user) {
+        if (user.getVersion() != null)
+            response.eTag(EntityTags.of(user.getVersion()));
+
+        return response.varyBy(HttpHeaders.ACCEPT).body(user);
     }
 
 }
@@ -0,0 +1,121 @@
+package my.project.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import my.project.entity.dtos.UserResponse;
+
+import my.project.util.id.IdAllocator;
+import my.project.util.shard.ShardRouter;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes users as newline delimited JSON straight from a database cursor. Rows are read as
+ * projections, so nothing is held in the persistence context and heap use does not grow with
+ * the size of the table.
+ *
+ * The id cursor only makes this an export of creates: renames and deletes of users already
+ * exported are never sent again. Ids are allocated before the insert commits, so a user may
+ * become visible after one with a higher id; users are only exported once their id is older
+ * than the safety lag, which has to cover the longest write transaction plus the clock skew
+ * between instances, so nothing can still commit below the cursor a client goes on from.
+ *
+ * A sharded table is exported one shard after the other, each from its own read only
+ * transaction.
+ */
+@Component
+public class UserExporter {
+
+    private final UserRepository userRepo;
+    private final ObjectMapper mapper;
+    private final ShardRouter shardRouter;
+    private final TransactionOperations transaction;
+    private final IdAllocator idAllocator;
+    private final long safetyLagMillis;
+
+    @Autowired
+    public UserExporter(UserRepository userRepo, ObjectMapper mapper, ShardRouter shardRouter,
+                        PlatformTransactionManager transactionManager, IdAllocator idAllocator,
+                        @Value("${user-service.export.safety-lag:10s}") Duration safetyLag) {
+        this(userRepo, mapper, shardRouter, readOnly(transactionManager), idAllocator, safetyLag);
+    }
+
+    public UserExporter(UserRepository userRepo, ObjectMapper mapper, ShardRouter shardRouter,
+                        TransactionOperations transaction, IdAllocator idAllocator, Duration safetyLag) {
+        this.userRepo = userRepo;
+        this.mapper = mapper;
+        this.shardRouter = shardRouter;
+        this.transaction = transaction;
+        this.idAllocator = idAllocator;
+        this.safetyLagMillis = safetyLag.toMillis();
+    }
+
+    private static TransactionTemplate readOnly(PlatformTransactionManager transactionManager) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+
+    /**
+     * Exports every user with an id greater than {@code since} (all users when null) and older
+     * than the safety lag, in id order, or with several shards in id order per shard. The
+     * stream is left open for the caller.
+     *
+     * @return the number of users written; unsharded the last one written is the next
+     * {@code since}, sharded the highest id written is
+     */
+    public long export(Long since, OutputStream out) throws IOException {
+        long after = since == null ? Long.MIN_VALUE : since;
+        long before = idAllocator.firstIdAt(System.currentTimeMillis() - safetyLagMillis);
+        long written = 0;
+
+        try (JsonGenerator json = mapper.getFactory().createGenerator(out)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+            for (int shard : shardRouter.allShards())
+                written += shardRouter.callOn(shard, () -> transaction.execute(status -> exportShard(shard, after, before, json)));
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+
+        }
+
+        return written;
+    }
+
+    private long exportShard(int shard, long after, long before, JsonGenerator json) {
+        long written = 0;
+
+        // redirects (see UserRepository) belong to a user whose row is exported from its own shard
+        try (Stream<UserResponse> users = userRepo.streamBetween(after, before)
+                .filter(user -> shardRouter.shardOf(user.getUserID()) == shard)) {
+
+            Iterator<UserResponse> it = users.iterator();
+            while (it.hasNext()) {
+                json.writeObject(it.next());
+                json.writeRaw('\n');
+                written++;
+            }
+
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+
+        }
+
+        return written;
+    }
+
+}
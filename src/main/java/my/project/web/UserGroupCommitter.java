@@ -0,0 +1,254 @@
+package my.project.web;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+
+import my.project.entity.dtos.BulkCreateResult;
+import my.project.util.exception.exceptions.ServiceUnavailableException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for single user creates. Concurrent callers are queued and one thread writes
+ * them through {@link UserBatchWriter#createAll} as a single transaction, a batch closes once it
+ * holds max-batch-size names or its first caller has waited max-wait. Each caller gets a future
+ * of its own row of the result, completed on the committer thread once its batch commits.
+ *
+ * Callers should not block a {@link my.project.util.async.UserServiceExecutor} worker on that
+ * future: the workers are as many as the connections, and a batch could then never grow past
+ * the number of workers. The queue is bounded by queue-capacity, beyond it creates are refused.
+ *
+ * A batch the database rejects as a whole, for anything other than a name taken meanwhile, is
+ * written again one caller at a time, so only the caller whose row fails gets the failure.
+ *
+ * Off by default ({@code user-service.group-commit.enabled}), in which case no thread is
+ * started and {@link UserService} inserts each user on its own.
+ */
+@Component
+public class UserGroupCommitter {
+
+    private final UserBatchWriter batchWriter;
+
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private final BlockingQueue<PendingCreate> queue;
+
+    private final Histogram batchSizeHistogram;
+    private final Histogram waitHistogram;
+    private final Counter fallbackCounter;
+
+    private final Thread committer;
+    private volatile boolean running;
+
+    @Autowired
+    public UserGroupCommitter(UserBatchWriter batchWriter,
+                              CollectorRegistry collectorRegistry,
+                              @Value("${user-service.group-commit.enabled:false}") boolean enabled,
+                              @Value("${user-service.group-commit.max-batch-size:100}") int maxBatchSize,
+                              @Value("${user-service.group-commit.max-wait:2ms}") Duration maxWait,
+                              @Value("${user-service.group-commit.queue-capacity:1000}") int queueCapacity) {
+
+        this.batchWriter = batchWriter;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+
+        batchSizeHistogram = Histogram.build()
+                .name("group_commit_batch_size")
+                .help("Users created per group commit transaction")
+                .buckets(1, 2, 5, 10, 25, 50, 100, 250, 500)
+                .register(collectorRegistry);
+
+        waitHistogram = Histogram.build()
+                .name("group_commit_wait_seconds")
+                .help("Time a create spent queued before its batch was written")
+                .buckets(0.0001, 0.0005, 0.001, 0.002, 0.005, 0.01, 0.025, 0.05, 0.1)
+                .register(collectorRegistry);
+
+        fallbackCounter = Counter.build()
+                .name("group_commit_fallback_count")
+                .help("Group commit batches that failed and were written again one create at a time")
+                .register(collectorRegistry);
+
+        this.committer = new Thread(this::run, "user-group-commit");
+        this.committer.setDaemon(true);
+        this.running = enabled;
+
+        if (enabled)
+            committer.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return CREATED with the new id, or CONFLICT when the name exists or an earlier caller
+     * in the same batch asked for it first
+     * @throws ServiceUnavailableException when called after shutdown
+     */
+    public BulkCreateResult create(String username) {
+        try {
+            return submit(username).join();
+
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Queues the create without waiting for it, the future completes as {@link #create} returns.
+     *
+     * @throws ServiceUnavailableException when called after shutdown or with the queue full,
+     * before anything is queued
+     * @throws my.project.util.exception.exceptions.InvalidRequestException for a name that
+     * could never be stored, which is not queued either
+     */
+    public CompletableFuture<BulkCreateResult> submit(String username) {
+
+        Usernames.check(username);
+
+        if (!running)
+            throw new ServiceUnavailableException("User creation is shutting down");
+
+        PendingCreate pending = new PendingCreate(username);
+
+        if (!queue.offer(pending))
+            throw new ServiceUnavailableException("Too many user creates waiting for a group commit, retry later");
+
+        // shutdown may have come between the check and the offer, and the committer may have
+        // drained the queue for the last time already. Whoever takes the entry out answers it.
+        if (!running && queue.remove(pending))
+            throw new ServiceUnavailableException("User creation is shutting down");
+
+        return pending.result;
+    }
+
+    private void run() {
+        List<PendingCreate> batch = new ArrayList<>(maxBatchSize);
+
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingCreate next = remaining > 0
+                            ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+
+                    if (next == null)
+                        break;
+
+                    batch.add(next);
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (!batch.isEmpty())
+                commit(batch);
+
+            batch.clear();
+        }
+
+        ServiceUnavailableException stopped = new ServiceUnavailableException("User creation is shutting down");
+        for (PendingCreate pending; (pending = queue.poll()) != null; )
+            pending.result.completeExceptionally(stopped);
+    }
+
+    private void commit(List<PendingCreate> batch) {
+        long now = System.nanoTime();
+        List<String> usernames = new ArrayList<>(batch.size());
+
+        for (PendingCreate pending : batch) {
+            usernames.add(pending.username);
+            waitHistogram.observe((now - pending.queuedNanos) / Collector.NANOSECONDS_PER_SECOND);
+        }
+
+        batchSizeHistogram.observe(batch.size());
+
+        List<BulkCreateResult> results;
+        try {
+            results = createAll(usernames);
+
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).result.completeExceptionally(e);
+                return;
+            }
+
+            fallbackCounter.inc();
+
+            for (PendingCreate pending : batch)
+                commitAlone(pending);
+
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++)
+            batch.get(i).result.complete(results.get(i));
+    }
+
+    private void commitAlone(PendingCreate pending) {
+        try {
+            pending.result.complete(createAll(List.of(pending.username)).get(0));
+        } catch (RuntimeException e) {
+            pending.result.completeExceptionally(e);
+        }
+    }
+
+    private List<BulkCreateResult> createAll(List<String> usernames) {
+        try {
+            return batchWriter.createAll(usernames);
+        } catch (DataIntegrityViolationException e) {
+            if (!Usernames.isTaken(e))
+                throw e;
+
+            // same race as UserService#addUsers, a single create committed one of the names
+            // after this batch looked for it
+            return batchWriter.createAll(usernames);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        committer.interrupt();
+    }
+
+    private static final class PendingCreate {
+
+        private final String username;
+        private final long queuedNanos = System.nanoTime();
+        private final CompletableFuture<BulkCreateResult> result = new CompletableFuture<>();
+
+        private PendingCreate(String username) {
+            this.username = username;
+        }
+    }
+
+}
@@ -0,0 +1,295 @@
+package my.project.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import my.project.entity.User;
+import my.project.entity.dtos.BulkCreateResult;
+import my.project.entity.dtos.ImportProgress;
+import my.project.entity.dtos.ImportRowError;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads an upload of usernames line by line and creates them through
+ * {@link UserService#addUsers(List)} a chunk at a time, so duplicates follow the same rules as
+ * every other create and only one chunk is ever held in memory. Names repeated across chunks
+ * are caught by the database, the earlier chunk has already committed.
+ *
+ * The report is written as NDJSON: an {@link ImportRowError} for every row that was not
+ * created and an {@link ImportProgress} after every chunk. Rows that cannot be stored are
+ * rejected before they join a chunk, and a chunk the database still fails is reported row by
+ * row as FAILED while the rest of the upload carries on. A row is never read past
+ * {@link #MAX_ROW_LENGTH} characters, a longer one is reported as TOO_LONG and the rest of it
+ * skipped without being held.
+ */
+@Component
+public class UserImporter {
+
+    public static final MediaType CSV = MediaType.parseMediaType("text/csv");
+    public static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    // a longest name with every character as a six character JSON escape, plus what surrounds it
+    static final int MAX_ROW_LENGTH = 6 * User.MAX_USERNAME_LENGTH + 256;
+
+    private final UserService userService;
+    private final ObjectMapper mapper;
+    private final int chunkSize;
+
+    @Autowired
+    public UserImporter(UserService userService,
+                        ObjectMapper mapper,
+                        @Value("${user-service.import.chunk-size:1000}") int chunkSize,
+                        @Value("${user-service.bulk.max-size:5000}") int maxBatchSize) {
+
+        // every chunk goes through addUsers, which refuses more than bulk.max-size names
+        if (chunkSize < 1 || chunkSize > maxBatchSize)
+            throw new IllegalArgumentException("Import chunk size must be between 1 and the bulk maximum of "
+                    + maxBatchSize + ", got " + chunkSize);
+
+        this.userService = userService;
+        this.mapper = mapper;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param format {@link #CSV}, a single username column with an optional "username" header,
+     *               or {@link #NDJSON}, one {"username": ...} object or JSON string per line
+     */
+    public ImportProgress importUsers(InputStream in, MediaType format, OutputStream out) throws IOException {
+        boolean csv = CSV.isCompatibleWith(format);
+
+        RowReader reader = new RowReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        ImportProgress progress = new ImportProgress();
+
+        try (JsonGenerator report = mapper.getFactory().createGenerator(out)) {
+            report.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+            List<String> names = new ArrayList<>(chunkSize);
+            List<Long> rows = new ArrayList<>(chunkSize);
+
+            long row = 0;
+            String line;
+
+            while ((line = reader.next()) != null) {
+                row++;
+
+                if (csv && row == 1 && line.trim().equalsIgnoreCase("username"))
+                    continue;
+
+                progress.setRows(progress.getRows() + 1);
+
+                if (reader.truncated()) {
+                    rejected(report, progress, row, null, ImportRowError.Reason.TOO_LONG);
+                    continue;
+                }
+
+                String username;
+                try {
+                    username = csv ? parseCsv(line) : parseNdjson(line);
+                } catch (JsonProcessingException | MalformedRowException e) {
+                    rejected(report, progress, row, null, ImportRowError.Reason.MALFORMED);
+                    continue;
+                }
+
+                if (username == null || username.isBlank()) {
+                    rejected(report, progress, row, username, ImportRowError.Reason.BLANK);
+                    continue;
+                }
+
+                if (username.length() > User.MAX_USERNAME_LENGTH) {
+                    rejected(report, progress, row, username, ImportRowError.Reason.TOO_LONG);
+                    continue;
+                }
+
+                names.add(username);
+                rows.add(row);
+
+                if (names.size() == chunkSize)
+                    writeChunk(names, rows, report, progress);
+            }
+
+            if (!names.isEmpty())
+                writeChunk(names, rows, report, progress);
+
+            progress.setComplete(true);
+            write(report, progress);
+        }
+
+        return progress;
+    }
+
+    private void writeChunk(List<String> names, List<Long> rows,
+                            JsonGenerator report, ImportProgress progress) throws IOException {
+
+        List<BulkCreateResult> results;
+        try {
+            results = userService.addUsers(names);
+        } catch (RuntimeException e) {
+            // nothing of the chunk committed, the caller learns which rows to send again
+            for (int i = 0; i < names.size(); i++)
+                write(report, new ImportRowError(rows.get(i), names.get(i), ImportRowError.Reason.FAILED));
+
+            progress.setFailed(progress.getFailed() + names.size());
+            results = List.of();
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).getStatus() == BulkCreateResult.Status.CREATED) {
+                progress.setCreated(progress.getCreated() + 1);
+            } else {
+                progress.setConflicts(progress.getConflicts() + 1);
+                write(report, new ImportRowError(rows.get(i), names.get(i), ImportRowError.Reason.CONFLICT));
+            }
+        }
+
+        names.clear();
+        rows.clear();
+
+        write(report, progress);
+        report.flush();
+    }
+
+    private void rejected(JsonGenerator report, ImportProgress progress,
+                          long row, String username, ImportRowError.Reason reason) throws IOException {
+        progress.setInvalid(progress.getInvalid() + 1);
+        write(report, new ImportRowError(row, username, reason));
+    }
+
+    private static void write(JsonGenerator report, Object line) throws IOException {
+        report.writeObject(line);
+        report.writeRaw('\n');
+    }
+
+    /*
+     * The first field of the line. A quoted field may hold commas and doubled quotes, but has to
+     * close on the same line and be followed by nothing but a separator, a quote anywhere else is
+     * malformed rather than guessed at.
+     */
+    private static String parseCsv(String line) throws MalformedRowException {
+        String rest = line.stripLeading();
+
+        if (!rest.startsWith("\"")) {
+            int comma = rest.indexOf(',');
+            String field = (comma < 0 ? rest : rest.substring(0, comma)).trim();
+
+            if (field.indexOf('"') >= 0)
+                throw new MalformedRowException();
+
+            return field;
+        }
+
+        StringBuilder field = new StringBuilder();
+
+        for (int i = 1; i < rest.length(); i++) {
+            char c = rest.charAt(i);
+
+            if (c != '"') {
+                field.append(c);
+                continue;
+            }
+
+            if (i + 1 < rest.length() && rest.charAt(i + 1) == '"') {
+                field.append('"');
+                i++;
+                continue;
+            }
+
+            String after = rest.substring(i + 1).stripLeading();
+
+            if (!after.isEmpty() && after.charAt(0) != ',')
+                throw new MalformedRowException();
+
+            return field.toString();
+        }
+
+        throw new MalformedRowException();
+    }
+
+    private String parseNdjson(String line) throws JsonProcessingException {
+        if (line.isBlank())
+            return null;
+
+        JsonNode node = mapper.readTree(line);
+
+        if (node.isTextual())
+            return node.asText();
+
+        JsonNode username = node.get("username");
+        return username == null || username.isNull() ? null : username.asText();
+    }
+
+    /**
+     * Lines as {@link BufferedReader#readLine()} splits them, but only the first
+     * {@link #MAX_ROW_LENGTH} characters of each are kept. The rest is read and dropped.
+     */
+    static final class RowReader {
+
+        private final BufferedReader reader;
+        private final StringBuilder line = new StringBuilder();
+
+        private boolean truncated;
+
+        RowReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * The next line without its terminator, cut short if {@link #truncated()}, or null at
+         * the end of the upload.
+         */
+        String next() throws IOException {
+            line.setLength(0);
+            truncated = false;
+
+            int c = reader.read();
+
+            if (c < 0)
+                return null;
+
+            while (c >= 0 && c != '\n' && c != '\r') {
+                if (line.length() < MAX_ROW_LENGTH)
+                    line.append((char) c);
+                else
+                    truncated = true;
+
+                c = reader.read();
+            }
+
+            if (c == '\r') {
+                reader.mark(1);
+
+                if (reader.read() != '\n')
+                    reader.reset();
+            }
+
+            return line.toString();
+        }
+
+        boolean truncated() {
+            return truncated;
+        }
+    }
+
+    static final class MalformedRowException extends Exception {
+
+        MalformedRowException() {
+            super(null, null, false, false);
+        }
+    }
+
+}
@@ -1,15 +1,138 @@
 package my.project.web;
 
 import my.project.entity.User;
+import my.project.entity.dtos.UserResponse;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import static org.hibernate.annotations.QueryHints.FETCH_SIZE;
+import static org.hibernate.annotations.QueryHints.FLUSH_MODE;
+
+/**
+ * With {@code user-service.sharding} configured, calls from outside are routed to the shards by
+ * {@link my.project.util.shard.ShardedUserRepositoryAspect}.
+ */
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByUsername(String username);
 
+    /*
+     * Read paths: projections straight into the response types so no managed entity, snapshot
+     * or dirty check is created. MANUAL is hibernate's name for the old NEVER flush mode.
+     */
+
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = FLUSH_MODE, value = "MANUAL"))
+    @Query("select new my.project.entity.dtos.UserResponse(u.userID, u.username, u.version) from USER u where u.userID = :userID")
+    Optional<UserResponse> findResponseById(@Param("userID") Long userID);
+
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = FLUSH_MODE, value = "MANUAL"))
+    @Query("select u.version from USER u where u.userID = :userID")
+    Optional<Long> findVersionById(@Param("userID") Long userID);
+
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = FLUSH_MODE, value = "MANUAL"))
+    boolean existsByUsername(String username);
+
+    /**
+     * Keyset page: seeks past {@code after} on the primary key instead of counting an OFFSET,
+     * so every page costs the same however deep the caller is. Only the page size of
+     * {@code pageable} is meant to be used, it becomes the LIMIT.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = FLUSH_MODE, value = "MANUAL"))
+    @Query("select new my.project.entity.dtos.UserResponse(u.userID, u.username) from USER u where u.userID > :after order by u.userID")
+    List<UserResponse> findPageAfter(@Param("after") Long after, Pageable pageable);
+
+    /**
+     * {@link #findPageAfter} with the version of every user, for the in memory prefix index to
+     * tell later changes from earlier ones. Reads the table, only run while the index loads.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = FLUSH_MODE, value = "MANUAL"))
+    @Query("select new my.project.entity.dtos.UserResponse(u.userID, u.username, u.version) from USER u where u.userID > :after order by u.userID")
+    List<UserResponse> findVersionedPageAfter(@Param("after") Long after, Pageable pageable);
+
+    /**
+     * Only used while the in memory prefix index is still loading. {@code prefix} must have
+     * its LIKE wildcards escaped with a backslash.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = FLUSH_MODE, value = "MANUAL"))
+    @Query("select new my.project.entity.dtos.UserResponse(u.userID, u.username) from USER u where u.username like concat(:prefix, '%') escape '\\' order by u.username")
+    List<UserResponse> findByUsernamePrefix(@Param("prefix") String prefix, Pageable pageable);
+
+    /**
+     * Forward only cursor over users with an id after {@code after} and before {@code before},
+     * fetched from the driver 1000 rows at a time. Must be consumed and closed inside a
+     * transaction.
+     */
+    @QueryHints({
+            @QueryHint(name = FLUSH_MODE, value = "MANUAL"),
+            @QueryHint(name = FETCH_SIZE, value = "1000")
+    })
+    @Query("select new my.project.entity.dtos.UserResponse(u.userID, u.username) from USER u where u.userID > :after and u.userID < :before order by u.userID")
+    Stream<UserResponse> streamBetween(@Param("after") Long after, @Param("before") Long before);
+
+    @Query("select u.username from USER u where u.username in :usernames")
+    List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
+
+    /*
+     * Bulk updates bypass hibernate's own version check, so they bump the version themselves.
+     */
+
+    /**
+     * Only updates when the row is still at {@code version}, 0 means it is missing or has moved on.
+     */
+    @Modifying
+    @Transactional
+    @Query("update USER u set u.username = :username, u.version = u.version + 1 where u.userID = :userID and u.version = :version")
+    int updateUsernameIfVersion(@Param("userID") Long userID, @Param("username") String username, @Param("version") Long version);
+
+    @Modifying
+    @Transactional
+    @Query("delete from USER u where u.userID = :userID")
+    int deleteUserById(@Param("userID") Long userID);
+
+    @Modifying
+    @Transactional
+    @Query("delete from USER u where u.userID = :userID and u.version = :version")
+    int deleteUserByIdIfVersion(@Param("userID") Long userID, @Param("version") Long version);
+
+    /*
+     * Redirects: a user renamed to a name that hashes to another shard keeps its row, and the
+     * new name is held on that shard by a row with the same id and version -1. Name lookups and
+     * the username unique constraint then still only need the shard the name hashes to.
+     */
+
+    @Modifying
+    @Transactional
+    @Query(value = "insert into USER (user_id, username, version) values (:userID, :username, -1)", nativeQuery = true)
+    int insertRedirect(@Param("userID") Long userID, @Param("username") String username);
+
+    @Modifying
+    @Transactional
+    @Query("update USER u set u.username = :username where u.userID = :userID and u.username = :previous")
+    int renameRedirect(@Param("userID") Long userID, @Param("previous") String previous, @Param("username") String username);
+
+    @Modifying
+    @Transactional
+    @Query("delete from USER u where u.userID = :userID and u.username = :username")
+    int deleteRedirect(@Param("userID") Long userID, @Param("username") String username);
+
 }
@@ -1,77 +1,449 @@
 package my.project.web;
 
 import my.project.entity.User;
+import my.project.entity.dtos.BulkCreateResult;
 import my.project.entity.dtos.UpdateUserRequest;
+import my.project.entity.dtos.UserPage;
 import my.project.entity.dtos.UserResponse;
-import my.project.util.exception.exceptions.DuplicateUsernameException;
-import my.project.util.exception.exceptions.UserNotFoundException;
+import my.project.util.cache.UserResponseCache;
+import my.project.util.cache.bus.InvalidationBus;
+import my.project.util.cache.bus.UserChangeEvent;
+import my.project.util.coalesce.SingleFlight;
+import my.project.util.coalesce.SingleFlights;
+import my.project.util.exception.exceptions.InvalidRequestException;
+import my.project.util.exception.exceptions.ServiceUnavailableException;
+import my.project.util.index.UsernameIndex;
+import my.project.util.index.UsernamePrefixIndex;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Predicate;
 
 @Service
 public class UserService {
 
+    // an unconditional rename that keeps losing to other writers of the same user gives up
+    private static final int MAX_RENAME_ATTEMPTS = 3;
+
     private final UserRepository userRepo;
+    private final UsernameIndex usernameIndex;
+    private final UsernamePrefixIndex prefixIndex;
+    private final UserResponseCache userCache;
+    private final UserBatchWriter batchWriter;
+    private final UserGroupCommitter groupCommitter;
+    private final InvalidationBus invalidationBus;
+
+    // tells this instance's events apart from those of other instances on the bus
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // concurrent identical reads share one query, see SingleFlight for how writes stay visible
+    private final SingleFlight<Long, UserResponse> userFlights;
+    private final SingleFlight<Long, Optional<Long>> versionFlights;
+    private final SingleFlight<String, Boolean> usernameFlights;
+
+    private final int maxBatchSize;
+    private final int maxAvailabilityCheckSize;
+    private final int maxPageSize;
+    private final int maxSearchResults;
 
     private final Predicate<String> checkNameAvail;
 
     @Autowired
-    public UserService(UserRepository userRepo) {
+    public UserService(UserRepository userRepo,
+                       UsernameIndex usernameIndex,
+                       UsernamePrefixIndex prefixIndex,
+                       UserResponseCache userCache,
+                       UserBatchWriter batchWriter,
+                       UserGroupCommitter groupCommitter,
+                       SingleFlights singleFlights,
+                       InvalidationBus invalidationBus,
+                       @Value("${user-service.bulk.max-size:5000}") int maxBatchSize,
+                       @Value("${user-service.bulk.max-availability-check-size:100}") int maxAvailabilityCheckSize,
+                       @Value("${user-service.paging.max-size:1000}") int maxPageSize,
+                       @Value("${user-service.search.max-results:50}") int maxSearchResults) {
         this.userRepo = userRepo;
-        this.checkNameAvail = str -> userRepo.findByUsername(str).isPresent();
+        this.usernameIndex = usernameIndex;
+        this.prefixIndex = prefixIndex;
+        this.userCache = userCache;
+        this.batchWriter = batchWriter;
+        this.groupCommitter = groupCommitter;
+        this.invalidationBus = invalidationBus;
+        this.userFlights = singleFlights.create("user_by_id");
+        this.versionFlights = singleFlights.create("version_by_id");
+        this.usernameFlights = singleFlights.create("username_exists");
+        this.maxBatchSize = maxBatchSize;
+        this.maxAvailabilityCheckSize = maxAvailabilityCheckSize;
+        this.maxPageSize = maxPageSize;
+        this.maxSearchResults = maxSearchResults;
+        this.checkNameAvail = str -> usernameIndex.isTaken(str,
+                name -> usernameFlights.execute(name, userRepo::existsByUsername));
+
+        invalidationBus.subscribe(this::onUserChanged);
+    }
+
+    /*
+     * The find / try methods report expected failures as a ServiceResult, the older methods
+     * below each of them throw the equivalent exception instead.
+     */
+
+    /**
+     * Cache hits return straight away. Misses for the same id share one cache load, which
+     * matters most for ids that do not exist, since those are never cached.
+     */
+    public ServiceResult<UserResponse> findUser(Long userID) {
+
+        UserResponse foundUser = userCache.getIfPresent(userID);
+
+        if (foundUser == null)
+            foundUser = userFlights.execute(userID, key -> userCache.get(key, id ->
+                    userRepo.findResponseById(id).orElse(null)
+            ));
+
+        return foundUser == null ? ServiceResult.notFound() : ServiceResult.ok(foundUser);
     }
 
     public UserResponse getUserById(Long userID) {
+        return findUser(userID).orElseThrow();
+    }
+
+    /**
+     * Current version of the user without building a response, taken from the cache when the
+     * user is cached and otherwise read on its own.
+     */
+    public ServiceResult<Long> findUserVersion(Long userID) {
+        UserResponse cached = userCache.getIfPresent(userID);
 
-        Optional<User> foundUser = userRepo.findById(userID);
+        if (cached != null && cached.getVersion() != null)
+            return ServiceResult.ok(cached.getVersion());
 
-        if (foundUser.isEmpty())
-            throw new UserNotFoundException();
+        return versionFlights.execute(userID, userRepo::findVersionById)
+                .map(ServiceResult::ok)
+                .orElseGet(ServiceResult::notFound);
+    }
 
-        return new UserResponse(foundUser.get());
+    public Long getUserVersion(Long userID) {
+        return findUserVersion(userID).orElseThrow();
+    }
+
+    /**
+     * Users with an id greater than {@code after} (from the start when null), at most
+     * {@code limit} of them, defaulting to and capped at the configured maximum page size.
+     */
+    public UserPage listUsers(Long after, Integer limit) {
+
+        if (limit != null && limit < 1)
+            throw new InvalidRequestException("Page size must be at least 1");
+
+        int pageSize = limit == null ? maxPageSize : Math.min(limit, maxPageSize);
+
+        // one extra row tells whether another page exists without a count query
+        List<UserResponse> users = userRepo.findPageAfter(
+                after == null ? Long.MIN_VALUE : after,
+                PageRequest.of(0, pageSize + 1)
+        );
+
+        if (users.size() <= pageSize)
+            return new UserPage(users, null);
+
+        List<UserResponse> page = new ArrayList<>(users.subList(0, pageSize));
+        return new UserPage(page, page.get(pageSize - 1).getUserID());
+    }
+
+    /**
+     * Users whose name starts with {@code prefix} in username order, 10 unless {@code limit}
+     * asks for more, never more than the configured maximum.
+     */
+    public List<UserResponse> searchUsernames(String prefix, Integer limit) {
+
+        if (limit != null && limit < 1)
+            throw new InvalidRequestException("Result limit must be at least 1");
+
+        int results = Math.min(limit == null ? 10 : limit, maxSearchResults);
+
+        if (prefixIndex.isReady())
+            return prefixIndex.search(prefix, results);
+
+        String escaped = prefix
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+
+        return userRepo.findByUsernamePrefix(escaped, PageRequest.of(0, results));
     }
 
     public boolean checkUsernameAvailability(String username) {
         return checkNameAvail.test(username);
     }
 
+    /**
+     * Resolves every name with at most one query, the returned map is true for names that
+     * are still free and keeps the iteration order of the request.
+     */
+    public Map<String, Boolean> checkUsernamesAvailability(Collection<String> usernames) {
+
+        if (usernames.size() > maxAvailabilityCheckSize)
+            throw new InvalidRequestException("Cannot check more than " + maxAvailabilityCheckSize + " usernames per request");
+
+        for (String username : usernames) {
+            if (username == null || username.isBlank())
+                throw new InvalidRequestException("Usernames to check must not be blank");
+        }
+
+        Map<String, Boolean> available = new LinkedHashMap<>();
+
+        usernameIndex.areTaken(new LinkedHashSet<>(usernames), userRepo::findExistingUsernames)
+                .forEach((username, taken) -> available.put(username, !taken));
+
+        return available;
+    }
+
+    /**
+     * The unique index on username is the duplicate check, the insert is the only statement.
+     * With group commit enabled the insert shares a transaction with concurrent creates instead.
+     */
+    public ServiceResult<UserResponse> tryAddUser(String username) {
+
+        Usernames.check(username);
+
+        if (groupCommitter.isEnabled())
+            return tryAddUserGrouped(username);
+
+        User saved;
+        try {
+            saved = userRepo.saveAndFlush(new User(username));
+        } catch (DataIntegrityViolationException e) {
+            if (!Usernames.isTaken(e))
+                throw e;
+
+            return ServiceResult.conflict();
+        }
+
+        changed(UserChangeEvent.Type.CREATED, saved.getUserID(), saved.getUsername(), saved.getVersion());
+
+        return ServiceResult.ok(new UserResponse(saved));
+    }
+
+    private ServiceResult<UserResponse> tryAddUserGrouped(String username) {
+
+        BulkCreateResult result;
+        try {
+            result = groupCommitter.create(username);
+        } catch (DataIntegrityViolationException e) {
+            if (!Usernames.isTaken(e))
+                throw e;
+
+            return ServiceResult.conflict();
+        }
+
+        return grouped(username, result);
+    }
+
+    /**
+     * {@link #tryAddUser} without holding the calling thread while the group commit batch
+     * fills, the future completes on the committer thread. Only for use with group commit
+     * enabled.
+     */
+    public CompletableFuture<ServiceResult<UserResponse>> tryAddUserAsync(String username) {
+
+        String problem = Usernames.problem(username);
+
+        if (problem != null)
+            return CompletableFuture.failedFuture(new InvalidRequestException(problem));
+
+        return groupCommitter.submit(username).handle((result, failure) -> {
+            if (failure == null)
+                return grouped(username, result);
+
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause()
+                    : failure;
+
+            if (cause instanceof DataIntegrityViolationException && Usernames.isTaken((DataIntegrityViolationException) cause))
+                return ServiceResult.conflict();
+
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+        });
+    }
+
+    public boolean isGroupCommitEnabled() {
+        return groupCommitter.isEnabled();
+    }
+
+    private ServiceResult<UserResponse> grouped(String username, BulkCreateResult result) {
+
+        if (result.getStatus() == BulkCreateResult.Status.CONFLICT)
+            return ServiceResult.conflict();
+
+        changed(UserChangeEvent.Type.CREATED, result.getUserID(), username, null);
+
+        return ServiceResult.ok(new UserResponse(result.getUserID(), username));
+    }
+
     public UserResponse addUser(String username) {
+        return tryAddUser(username).orElseThrow();
+    }
 
-        if (checkNameAvail.test(username))
-            throw new DuplicateUsernameException();
+    public List<BulkCreateResult> addUsers(List<String> usernames) {
 
-        return new UserResponse(
-                userRepo.save(
-                        new User(username)
-                )
-        );
+        if (usernames.size() > maxBatchSize)
+            throw new InvalidRequestException("Cannot create more than " + maxBatchSize + " users per request");
+
+        usernames.forEach(Usernames::check);
+
+        List<BulkCreateResult> results;
+        try {
+            results = batchWriter.createAll(usernames);
+        } catch (DataIntegrityViolationException e) {
+            if (!Usernames.isTaken(e))
+                throw e;
+
+            // a concurrent create took one of the names after the batch checked for it,
+            // the retry sees the committed row and reports it as a conflict instead
+            results = batchWriter.createAll(usernames);
+        }
+
+        for (BulkCreateResult result : results) {
+            if (result.getStatus() == BulkCreateResult.Status.CREATED)
+                changed(UserChangeEvent.Type.CREATED, result.getUserID(), result.getUsername(), null);
+        }
+
+        return results;
     }
 
     public UserResponse updateUser(UpdateUserRequest req) {
+        return updateUser(req, null);
+    }
+
+    public UserResponse updateUser(UpdateUserRequest req, Long expectedVersion) {
+        return tryUpdateUser(req, expectedVersion).orElseThrow();
+    }
 
-        if (userRepo.findById(req.getUserID()).isEmpty())
-            throw new UserNotFoundException();
+    /**
+     * With {@code expectedVersion} the rename only applies while the user is still at that
+     * version, a user that has moved on is a failed precondition. Without it the rename reads
+     * the current version and applies to that, so every change knows the version it produced
+     * and the caches and indexes can order it. That is one read more than a blind update, and
+     * a user renamed by someone else in between is read again, at most
+     * {@link #MAX_RENAME_ATTEMPTS} times before the caller is told to retry.
+     */
+    public ServiceResult<UserResponse> tryUpdateUser(UpdateUserRequest req, Long expectedVersion) {
 
-        if (checkNameAvail.test(req.getUsername()))
-            throw new DuplicateUsernameException();
+        Usernames.check(req.getUsername());
 
-        return new UserResponse(
-                userRepo.save(req.get())
-        );
+        try {
+            if (expectedVersion != null) {
+                if (userRepo.updateUsernameIfVersion(req.getUserID(), req.getUsername(), expectedVersion) == 1)
+                    return renamed(req, expectedVersion + 1);
+
+                return userRepo.existsById(req.getUserID()) ? ServiceResult.preconditionFailed() : ServiceResult.notFound();
+            }
+
+            for (int attempt = 0; attempt < MAX_RENAME_ATTEMPTS; attempt++) {
+                Optional<Long> current = userRepo.findVersionById(req.getUserID());
+
+                if (current.isEmpty())
+                    return ServiceResult.notFound();
+
+                if (userRepo.updateUsernameIfVersion(req.getUserID(), req.getUsername(), current.get()) == 1)
+                    return renamed(req, current.get() + 1);
+            }
+
+        } catch (DataIntegrityViolationException e) {
+            if (!Usernames.isTaken(e))
+                throw e;
+
+            return ServiceResult.conflict();
+        }
+
+        throw new ServiceUnavailableException("User " + req.getUserID() + " is being changed concurrently, retry later");
 
     }
 
+    private ServiceResult<UserResponse> renamed(UpdateUserRequest req, long version) {
+        changed(UserChangeEvent.Type.UPDATED, req.getUserID(), req.getUsername(), version);
+
+        UserResponse updatedUser = new UserResponse(req.get());
+        updatedUser.setVersion(version);
+
+        return ServiceResult.ok(updatedUser);
+    }
+
     public void deleteUser(Long userID) {
+        tryDeleteUser(userID).orElseThrow();
+    }
+
+    public ServiceResult<Void> tryDeleteUser(Long userID) {
+
+        if (userRepo.deleteUserById(userID) == 0)
+            return ServiceResult.notFound();
+
+        changed(UserChangeEvent.Type.DELETED, userID, null, null);
+
+        return ServiceResult.ok(null);
+
+    }
+
+    /**
+     * Applies a committed change here, then tells the other instances about it.
+     */
+    private void changed(UserChangeEvent.Type type, Long userID, String username, Long version) {
+        UserChangeEvent event = new UserChangeEvent(type, userID, username, version, instanceId, System.currentTimeMillis());
+
+        apply(event);
+        invalidationBus.publish(event);
+    }
+
+    private void onUserChanged(UserChangeEvent event) {
+
+        if (instanceId.equals(event.getOrigin()))
+            return;
+
+        apply(event);
+        userCache.recordCoherenceLag(event.getPublishedAtMillis());
+    }
+
+    /**
+     * Brings every local structure in line with a change, whichever instance made it. Safe to
+     * repeat, and the cache and prefix index check versions so a late event cannot undo a newer
+     * one.
+     */
+    private void apply(UserChangeEvent event) {
+        Long userID = event.getUserID();
 
-        if (userRepo.findById(userID).isEmpty())
-            throw new UserNotFoundException();
+        switch (event.getType()) {
+            case CREATED:
+                usernameIndex.add(event.getUsername());
+                usernameFlights.forget(event.getUsername());
+                prefixIndex.put(userID, event.getUsername(), 0L);
+                break;
 
-        userRepo.deleteById(userID);
+            case UPDATED:
+                userCache.invalidate(userID, event.getVersion());
+                userFlights.forget(userID);
+                versionFlights.forget(userID);
+                usernameIndex.add(event.getUsername());
+                usernameIndex.markStale();
+                // the old name is freed as well, and only the database knows what it was
+                usernameFlights.forgetAll();
+                prefixIndex.put(userID, event.getUsername(), event.getVersion());
+                break;
 
+            case DELETED:
+                userCache.invalidate(userID, Long.MAX_VALUE);
+                userFlights.forget(userID);
+                versionFlights.forget(userID);
+                usernameIndex.markStale();
+                usernameFlights.forgetAll();
+                prefixIndex.remove(userID);
+                break;
+        }
     }
 
 }
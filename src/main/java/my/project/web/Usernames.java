@@ -0,0 +1,60 @@
+package my.project.web;
+
+import my.project.entity.User;
+import my.project.util.exception.exceptions.InvalidRequestException;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.sql.SQLException;
+
+/**
+ * What a username has to look like before it is written, and telling a taken name apart from
+ * the other ways an insert or rename can violate the schema.
+ */
+final class Usernames {
+
+    private Usernames() {
+    }
+
+    /**
+     * Why {@code username} cannot be stored, null when it can.
+     */
+    static String problem(String username) {
+        if (username == null || username.isBlank())
+            return "Username must not be blank";
+
+        if (username.length() > User.MAX_USERNAME_LENGTH)
+            return "Username must not be longer than " + User.MAX_USERNAME_LENGTH + " characters";
+
+        return null;
+    }
+
+    static void check(String username) {
+        String problem = problem(username);
+
+        if (problem != null)
+            throw new InvalidRequestException(problem);
+    }
+
+    /**
+     * True only when the violation is the unique constraint on username. Anything else, a value
+     * the column rejects or a null, is a bug or a bad request and must not read as a conflict.
+     */
+    static boolean isTaken(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String text = null;
+
+            if (cause instanceof ConstraintViolationException)
+                text = ((ConstraintViolationException) cause).getConstraintName();
+            else if (cause instanceof SQLException && String.valueOf(((SQLException) cause).getSQLState()).startsWith("23"))
+                text = cause.getMessage();
+
+            if (text != null && text.toLowerCase().contains(User.USERNAME_CONSTRAINT))
+                return true;
+        }
+
+        return false;
+    }
+
+}
@@ -1,5 +1,5 @@
-insert into USER (username) values ('test1');
-insert into USER (username) values ('test2');
-insert into USER (username) values ('test3');
-insert into USER (username) values ('test4');
-insert into USER (username) values ('test5');
+insert into USER (user_id, username, version) values (1, 'test1', 0);
+insert into USER (user_id, username, version) values (2, 'test2', 0);
+insert into USER (user_id, username, version) values (3, 'test3', 0);
+insert into USER (user_id, username, version) values (4, 'test4', 0);
+insert into USER (user_id, username, version) values (5, 'test5', 0);
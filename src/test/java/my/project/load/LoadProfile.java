@@ -0,0 +1,105 @@
+package my.project.load;
+
+import my.project.util.metrics.ControllerEndpoints;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Shape of a load run, read from system properties so the same harness can replay different
+ * traffic, e.g. -Dload.mode=open -Dload.rate=500 -Dload.mix=GET_USER:80,ADD_USER:20
+ */
+final class LoadProfile {
+
+    enum Mode {
+        /** fixed arrival rate, latency is measured from the intended send time */
+        OPEN,
+        /** every client waits for its response before sending the next request */
+        CLOSED
+    }
+
+    private static final String DEFAULT_MIX =
+            "CHECK_USERNAME_AVAILABILITY:40,GET_USER:35,ADD_USER:10,UPDATE_USER:10,DELETE_USER:5";
+
+    final Mode mode;
+    final int clients;
+    final double ratePerSecond;
+    final Duration warmup;
+    final Duration duration;
+    final Map<ControllerEndpoints, Integer> mix;
+
+    private final ControllerEndpoints[] endpoints;
+    private final int[] cumulativeWeights;
+
+    private LoadProfile(Mode mode, int clients, double ratePerSecond,
+                        Duration warmup, Duration duration, Map<ControllerEndpoints, Integer> mix) {
+
+        if (clients < 1 || ratePerSecond <= 0 || mix.isEmpty())
+            throw new IllegalArgumentException("load profile needs clients, a positive rate and a traffic mix");
+
+        this.mode = mode;
+        this.clients = clients;
+        this.ratePerSecond = ratePerSecond;
+        this.warmup = warmup;
+        this.duration = duration;
+        this.mix = mix;
+
+        endpoints = mix.keySet().toArray(new ControllerEndpoints[0]);
+        cumulativeWeights = new int[endpoints.length];
+
+        int total = 0;
+        for (int i = 0; i < endpoints.length; i++) {
+            total += mix.get(endpoints[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    static LoadProfile fromSystemProperties() {
+        return new LoadProfile(
+                Mode.valueOf(System.getProperty("load.mode", "closed").toUpperCase(Locale.ROOT)),
+                Integer.getInteger("load.clients", 32),
+                Double.parseDouble(System.getProperty("load.rate", "200")),
+                Duration.ofSeconds(Long.getLong("load.warmup-seconds", 10L)),
+                Duration.ofSeconds(Long.getLong("load.duration-seconds", 30L)),
+                parseMix(System.getProperty("load.mix", DEFAULT_MIX))
+        );
+    }
+
+    private static Map<ControllerEndpoints, Integer> parseMix(String mix) {
+        Map<ControllerEndpoints, Integer> weights = new EnumMap<>(ControllerEndpoints.class);
+
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            int weight = Integer.parseInt(parts[1].trim());
+
+            if (weight > 0)
+                weights.put(ControllerEndpoints.valueOf(parts[0].trim()), weight);
+        }
+
+        return weights;
+    }
+
+    ControllerEndpoints next() {
+        int roll = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+
+        for (int i = 0; i < cumulativeWeights.length; i++)
+            if (roll < cumulativeWeights[i])
+                return endpoints[i];
+
+        return endpoints[endpoints.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        return "mode=" + mode
+                + ", clients=" + clients
+                + (mode == Mode.OPEN ? ", rate=" + ratePerSecond + "/s" : "")
+                + ", warmup=" + warmup.getSeconds() + "s"
+                + ", duration=" + duration.getSeconds() + "s"
+                + ", mix=" + mix;
+    }
+
+}
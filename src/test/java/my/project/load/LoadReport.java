@@ -0,0 +1,86 @@
+package my.project.load;
+
+import my.project.util.metrics.ControllerEndpoints;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and throughput per endpoint. Latencies are kept in microseconds in HDR histograms so
+ * tail percentiles are exact to three significant digits regardless of run length.
+ */
+final class LoadReport {
+
+    /** status recorded when the request never got a response */
+    static final int TRANSPORT_FAILURE = -1;
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Map<ControllerEndpoints, EndpointStats> stats = new EnumMap<>(ControllerEndpoints.class);
+
+    LoadReport() {
+        for (ControllerEndpoints endPoint : ControllerEndpoints.values())
+            stats.put(endPoint, new EndpointStats());
+    }
+
+    void record(ControllerEndpoints endPoint, long latencyNanos, int status) {
+        EndpointStats endpointStats = stats.get(endPoint);
+
+        endpointStats.latencies.recordValue(
+                Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_TRACKABLE_MICROS));
+
+        // 4xx are expected answers (taken names, users deleted by another client), 5xx are not
+        if (status == TRANSPORT_FAILURE || status >= 500)
+            endpointStats.failures.increment();
+    }
+
+    long totalRequests() {
+        return stats.values().stream().mapToLong(s -> s.latencies.getTotalCount()).sum();
+    }
+
+    long totalFailures() {
+        return stats.values().stream().mapToLong(s -> s.failures.sum()).sum();
+    }
+
+    String render(Duration elapsed) {
+        double seconds = elapsed.toNanos() / 1e9;
+        Histogram all = new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+
+        StringBuilder out = new StringBuilder(String.format("%-30s %10s %10s %10s %10s %10s %10s %8s%n",
+                "endpoint", "requests", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "5xx"));
+
+        stats.forEach((endPoint, endpointStats) -> {
+            if (endpointStats.latencies.getTotalCount() == 0)
+                return;
+
+            all.add(endpointStats.latencies);
+            out.append(row(endPoint.name(), endpointStats.latencies, endpointStats.failures.sum(), seconds));
+        });
+
+        return out.append(row("TOTAL", all, totalFailures(), seconds)).toString();
+    }
+
+    private static String row(String name, Histogram latencies, long failures, double seconds) {
+        return String.format("%-30s %10d %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n",
+                name,
+                latencies.getTotalCount(),
+                latencies.getTotalCount() / seconds,
+                latencies.getValueAtPercentile(50) / 1000.0,
+                latencies.getValueAtPercentile(99) / 1000.0,
+                latencies.getValueAtPercentile(99.9) / 1000.0,
+                latencies.getMaxValue() / 1000.0,
+                failures);
+    }
+
+    private static final class EndpointStats {
+        private final Histogram latencies = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        private final LongAdder failures = new LongAdder();
+    }
+
+}
@@ -0,0 +1,159 @@
+package my.project.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import my.project.util.metrics.ControllerEndpoints;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a traffic mix against the service running on the test profile and reports latency
+ * percentiles per endpoint. Excluded from the regular test run, use "mvn -Pload test" and the
+ * load.* system properties described in {@link LoadProfile}.
+ */
+@Tag("load")
+@ActiveProfiles("test")
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.jpa.show-sql=false",
+                // every simulated client shares one address, per client limits would only measure the limiter
+                "user-service.rate-limit.enabled=false"
+        }
+)
+public class UserServiceLoadTest {
+
+    private static final Path REPORT = Path.of("target", "load-report.txt");
+
+    private static final List<String> SCRAPED_METRICS = Arrays.asList(
+            "endpoint_request_count", "error_count", "username_index_lookup_count",
+            "caffeine_cache_hit_total", "caffeine_cache_miss_total", "hikaricp_connections",
+            "log_events_dropped_count", "concurrency_limit"
+    );
+
+    private final LoadProfile profile = LoadProfile.fromSystemProperties();
+    private final ObjectMapper mapper;
+
+    @LocalServerPort
+    private int port;
+
+    private UserTraffic traffic;
+
+    @Autowired
+    public UserServiceLoadTest(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @BeforeEach
+    public void setUp() {
+        traffic = new UserTraffic(URI.create("http://localhost:" + port), mapper, profile);
+    }
+
+    @Test
+    public void test_productionTrafficMix() throws Exception {
+
+        // Arrange
+        run(profile.warmup, new LoadReport());
+        LoadReport report = new LoadReport();
+
+        // Act
+        long start = System.nanoTime();
+        run(profile.duration, report);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        String summary = profile + "\n\n"
+                + report.render(elapsed) + "\n"
+                + traffic.scrapePrometheus(SCRAPED_METRICS);
+
+        System.out.println(summary);
+        Files.createDirectories(REPORT.getParent());
+        Files.writeString(REPORT, summary);
+
+        // Assert
+        Assertions.assertTrue(report.totalRequests() > 0, "Load run did not complete any requests");
+        Assertions.assertEquals(0, report.totalFailures(), "Server errors or transport failures under load");
+
+    }
+
+    private void run(Duration length, LoadReport report) throws InterruptedException {
+        if (profile.mode == LoadProfile.Mode.OPEN)
+            runOpenLoop(length, report);
+        else
+            runClosedLoop(length, report);
+    }
+
+    /**
+     * Requests are released on a fixed schedule and timed from the moment they were due, so a
+     * stalled server shows up as queueing latency instead of silently lowering the send rate.
+     */
+    private void runOpenLoop(Duration length, LoadReport report) throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(profile.clients);
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / profile.ratePerSecond);
+        long end = System.nanoTime() + length.toNanos();
+
+        for (long due = System.nanoTime(); due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+
+            long intendedStart = due;
+            clients.execute(() -> call(report, intendedStart));
+        }
+
+        awaitClients(clients);
+    }
+
+    private void runClosedLoop(Duration length, LoadReport report) throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(profile.clients);
+        long end = System.nanoTime() + length.toNanos();
+
+        for (int i = 0; i < profile.clients; i++)
+            clients.execute(() -> {
+                while (System.nanoTime() < end && !Thread.currentThread().isInterrupted())
+                    call(report, System.nanoTime());
+            });
+
+        awaitClients(clients);
+    }
+
+    private void call(LoadReport report, long startNanos) {
+        ControllerEndpoints endPoint = traffic.next();
+        int status;
+
+        try {
+            status = traffic.execute(endPoint);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        report.record(endPoint, System.nanoTime() - startNanos, status);
+    }
+
+    private static void awaitClients(ExecutorService clients) throws InterruptedException {
+        clients.shutdown();
+
+        if (!clients.awaitTermination(1, TimeUnit.MINUTES))
+            clients.shutdownNow();
+    }
+
+}
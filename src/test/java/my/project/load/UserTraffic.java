@@ -0,0 +1,236 @@
+package my.project.load;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import my.project.entity.dtos.BulkCreateResult;
+import my.project.entity.dtos.UpdateUserRequest;
+import my.project.entity.dtos.UserResponse;
+import my.project.util.metrics.ControllerEndpoints;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns a {@link ControllerEndpoints} value into a real HTTP call against the running service and
+ * keeps track of the users it has created so reads, updates and deletes hit live rows.
+ */
+final class UserTraffic {
+
+    private static final int BULK_SIZE = 10;
+    private static final int SEED_USERS = 5;
+
+    private final HttpClient client;
+    private final URI baseUri;
+    private final ObjectMapper mapper;
+    private final LoadProfile profile;
+
+    private final LiveUsers liveUsers = new LiveUsers();
+    private final AtomicLong names = new AtomicLong();
+
+    UserTraffic(URI baseUri, ObjectMapper mapper, LoadProfile profile) {
+        this.baseUri = baseUri;
+        this.mapper = mapper;
+        this.profile = profile;
+
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        for (long id = 1; id <= SEED_USERS; id++)
+            liveUsers.add(id);
+    }
+
+    /**
+     * Next endpoint from the mix, a create is sent instead while there is no user left to act on.
+     */
+    ControllerEndpoints next() {
+        ControllerEndpoints endPoint = profile.next();
+
+        switch (endPoint) {
+            case GET_USER:
+            case UPDATE_USER:
+            case DELETE_USER:
+                return liveUsers.isEmpty() ? ControllerEndpoints.ADD_USER : endPoint;
+            default:
+                return endPoint;
+        }
+    }
+
+    /**
+     * @return the HTTP status, or {@link LoadReport#TRANSPORT_FAILURE} when there was no response
+     */
+    int execute(ControllerEndpoints endPoint) throws InterruptedException {
+        try {
+            switch (endPoint) {
+                case CHECK_USERNAME_AVAILABILITY:
+                    return send(get("/user/" + someUsername())).statusCode();
+
+                case CHECK_USERNAMES_AVAILABILITY:
+                    return send(post("/user/availability", someUsernames())).statusCode();
+
+                case GET_USER:
+                    return send(get("/user/id/" + liveUsers.pick())).statusCode();
+
+                case LIST_USERS:
+                    return send(get("/user?limit=100&after=" + liveUsers.pick())).statusCode();
+
+                case ADD_USER:
+                    return addUser();
+
+                case ADD_USERS:
+                    return addUsers();
+
+                case UPDATE_USER:
+                    return updateUser();
+
+                case DELETE_USER:
+                    return send(HttpRequest.newBuilder(uri("/user/" + liveUsers.take())).DELETE().build()).statusCode();
+
+                default:
+                    throw new IllegalArgumentException("No traffic defined for " + endPoint);
+            }
+
+        } catch (IOException e) {
+            return LoadReport.TRANSPORT_FAILURE;
+        }
+    }
+
+    /**
+     * Non comment lines of the Prometheus exposition that start with one of the given prefixes.
+     */
+    String scrapePrometheus(List<String> prefixes) throws IOException, InterruptedException {
+        StringBuilder out = new StringBuilder();
+
+        for (String line : send(get("/actuator/prometheus")).body().split("\n"))
+            if (!line.startsWith("#") && prefixes.stream().anyMatch(line::startsWith))
+                out.append(line).append('\n');
+
+        return out.toString();
+    }
+
+    private int addUser() throws IOException, InterruptedException {
+        HttpResponse<String> res = send(post("/user/create/" + freshUsername(), null));
+
+        if (res.statusCode() == 201)
+            liveUsers.add(mapper.readValue(res.body(), UserResponse.class).getUserID());
+
+        return res.statusCode();
+    }
+
+    private int addUsers() throws IOException, InterruptedException {
+        List<String> usernames = new ArrayList<>(BULK_SIZE);
+        for (int i = 0; i < BULK_SIZE; i++)
+            usernames.add(freshUsername());
+
+        HttpResponse<String> res = send(post("/user/create", usernames));
+
+        if (res.statusCode() == 200)
+            for (BulkCreateResult result : mapper.readValue(res.body(), new TypeReference<List<BulkCreateResult>>() {}))
+                if (result.getStatus() == BulkCreateResult.Status.CREATED)
+                    liveUsers.add(result.getUserID());
+
+        return res.statusCode();
+    }
+
+    private int updateUser() throws IOException, InterruptedException {
+        UpdateUserRequest req = new UpdateUserRequest();
+        req.setUserID(liveUsers.pick());
+        req.setUsername(freshUsername());
+
+        HttpRequest request = HttpRequest.newBuilder(uri("/user/edit"))
+                .header("Content-Type", "application/json")
+                .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(req)))
+                .build();
+
+        return send(request).statusCode();
+    }
+
+    // roughly half the checks hit a seeded name, the rest a name nobody has registered
+    private String someUsername() {
+        return ThreadLocalRandom.current().nextBoolean()
+                ? "test" + (ThreadLocalRandom.current().nextInt(SEED_USERS) + 1)
+                : "free_" + names.incrementAndGet();
+    }
+
+    private List<String> someUsernames() {
+        List<String> usernames = new ArrayList<>(BULK_SIZE);
+        for (int i = 0; i < BULK_SIZE; i++)
+            usernames.add(someUsername());
+
+        return usernames;
+    }
+
+    private String freshUsername() {
+        return "load_" + names.incrementAndGet();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET().build();
+    }
+
+    private HttpRequest post(String path, Object body) throws IOException {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return baseUri.resolve(path);
+    }
+
+    /**
+     * Ids of users believed to exist. Another client may delete a picked user before the request
+     * lands, the resulting 404 is an expected answer and not a failure. The same goes for the
+     * first seeded id handed out when the pool ran dry between {@link #next()} and the call.
+     */
+    private static final class LiveUsers {
+
+        private final List<Long> ids = new ArrayList<>();
+
+        synchronized void add(Long id) {
+            ids.add(id);
+        }
+
+        synchronized boolean isEmpty() {
+            return ids.isEmpty();
+        }
+
+        synchronized Long pick() {
+            if (ids.isEmpty())
+                return 1L;
+
+            return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        }
+
+        // swap remove keeps this O(1), order does not matter
+        synchronized Long take() {
+            if (ids.isEmpty())
+                return 1L;
+
+            int i = ThreadLocalRandom.current().nextInt(ids.size());
+            Long id = ids.get(i);
+            ids.set(i, ids.get(ids.size() - 1));
+            ids.remove(ids.size() - 1);
+
+            return id;
+        }
+    }
+
+}
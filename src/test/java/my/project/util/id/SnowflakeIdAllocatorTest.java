@@ -0,0 +1,142 @@
+package my.project.util.id;
+
+import io.prometheus.client.CollectorRegistry;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SnowflakeIdAllocatorTest {
+
+    private static final long START = SnowflakeIdAllocator.EPOCH_MILLIS + 86_400_000L;
+
+    private AtomicLong clock;
+    private CollectorRegistry registry;
+
+    @BeforeEach
+    public void setUp() {
+        clock = new AtomicLong(START);
+        registry = new CollectorRegistry();
+    }
+
+    private SnowflakeIdAllocator allocator(int nodeId, int shardBits) {
+        return new SnowflakeIdAllocator(registry, nodeId, shardBits, clock::get);
+    }
+
+    private double aheadOfClock() {
+        Double value = registry.getSampleValue("id_allocator_ahead_of_clock_count_total");
+        return value == null ? 0 : value;
+    }
+
+    @Test
+    public void test_nextId_keepsIncreasing_givenClockSteppingBack() {
+        // Arrange
+        SnowflakeIdAllocator sut = allocator(3, 0);
+        long beforeStep = sut.nextId(0);
+
+        // Act
+        clock.addAndGet(-5_000);
+        long duringStep = sut.nextId(0);
+        long alsoDuringStep = sut.nextId(0);
+
+        clock.addAndGet(10_000);
+        long afterStep = sut.nextId(0);
+
+        // Assert
+        Assertions.assertTrue(duringStep > beforeStep, "Expected ids to keep increasing while the clock is behind");
+        Assertions.assertTrue(alsoDuringStep > duringStep, "Expected ids to keep increasing while the clock is behind");
+        Assertions.assertTrue(afterStep > alsoDuringStep, "Expected ids to keep increasing once the clock has caught up");
+
+        Assertions.assertEquals(2.0, aheadOfClock(), "Expected the ids issued ahead of the clock to be counted");
+
+    }
+
+    @Test
+    public void test_nextId_movesToNextMillisecond_givenSequenceExhausted() {
+        // Arrange
+        SnowflakeIdAllocator sut = allocator(3, 0);
+        int perMillisecond = 1 << SnowflakeIdAllocator.SEQUENCE_BITS;
+        long millis = START - SnowflakeIdAllocator.EPOCH_MILLIS;
+
+        // Act
+        long previous = -1;
+        for (int i = 0; i < perMillisecond; i++) {
+            long id = sut.nextId(0);
+
+            Assertions.assertTrue(id > previous, "Expected every id to be larger than the one before");
+            Assertions.assertEquals(millis, id >>> 22, "Expected the first 4096 ids to carry the current millisecond");
+            previous = id;
+        }
+
+        long overflow = sut.nextId(0);
+
+        // Assert
+        Assertions.assertTrue(overflow > previous, "Expected the id after the last sequence to be larger");
+        Assertions.assertEquals(millis + 1, overflow >>> 22, "Expected the id after the last sequence to borrow the next millisecond");
+        Assertions.assertEquals(0, overflow & (perMillisecond - 1), "Expected the sequence to start over");
+        Assertions.assertEquals(3, (overflow >>> SnowflakeIdAllocator.SEQUENCE_BITS) & ((1 << SnowflakeIdAllocator.NODE_BITS) - 1), "Expected the node id to be kept");
+
+        Assertions.assertEquals(1.0, aheadOfClock(), "Expected the borrowed millisecond to be counted");
+
+    }
+
+    @Test
+    public void test_shardOf_returnsShard_givenIdOfEachShard() {
+        // Arrange
+        SnowflakeIdAllocator sut = allocator(200, 2);
+
+        for (int shard = 0; shard < 4; shard++) {
+            // Act
+            long id = sut.nextId(shard);
+
+            // Assert
+            Assertions.assertEquals(shard, sut.shardOf(id), "Expected the shard an id was allocated for to be read back");
+            Assertions.assertEquals(200, (id >>> (SnowflakeIdAllocator.SEQUENCE_BITS + 2)) & 0xFF, "Expected the node id next to the shard bits");
+        }
+
+    }
+
+    @Test
+    public void test_firstIdAt_boundsIdsOfThatMillisecond() {
+        // Arrange
+        SnowflakeIdAllocator sut = allocator(1023, 0);
+
+        // Act
+        long id = sut.nextId(0);
+
+        // Assert
+        Assertions.assertTrue(sut.firstIdAt(START) <= id, "Expected an id not to be below the first id of its millisecond");
+        Assertions.assertTrue(id < sut.firstIdAt(START + 1), "Expected an id to be below the first id of the next millisecond");
+        Assertions.assertEquals(0, sut.firstIdAt(SnowflakeIdAllocator.EPOCH_MILLIS - 1), "Expected times before the epoch to map to 0");
+
+    }
+
+    @Test
+    public void test_constructor_throwsIllegalArgumentException_givenNodeIdBeyondShardedRange() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> allocator(256, 2),
+                "With two shard bits only 256 node ids are left"
+        );
+    }
+
+    @Test
+    public void test_resolveNodeId_returnsOrdinal_givenStatefulSetPodName() {
+        Assertions.assertEquals(2, SnowflakeIdAllocator.resolveNodeId(null, "user-server-2"), "Expected the ordinal of the pod name");
+        Assertions.assertEquals(7, SnowflakeIdAllocator.resolveNodeId(" 7 ", "user-server-2"), "Expected a configured node id to win");
+    }
+
+    @Test
+    public void test_resolveNodeId_throwsIllegalArgumentException_givenNoOrdinal() {
+        for (String podName : new String[] { null, "", "laptop", "user-server-5d8f7c9b6-x2k4p", "user-server-" }) {
+            Assertions.assertThrows(
+                    IllegalArgumentException.class,
+                    () -> SnowflakeIdAllocator.resolveNodeId("", podName),
+                    "Expected no node id to be guessed from '" + podName + "'"
+            );
+        }
+    }
+
+}
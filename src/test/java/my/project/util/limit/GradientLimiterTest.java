@@ -0,0 +1,124 @@
+package my.project.util.limit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GradientLimiterTest {
+
+    private static final long FAST = 1_000_000L;
+    private static final long SLOW = 10_000_000L;
+
+    // the defaults of ConcurrencyLimitProperties, between 2 and 200 starting at 20
+    private static GradientLimiter limiter() {
+        return new GradientLimiter(20, 2, 200, 0.2, 1.5, 0.9, 600);
+    }
+
+    // the limit only moves while it is being used, so every sample is taken at full occupancy
+    private static void samples(GradientLimiter limiter, int count, long rttNanos) {
+        for (int i = 0; i < count; i++) {
+            while (limiter.tryAcquire()) {
+            }
+
+            limiter.onSuccess(rttNanos);
+        }
+    }
+
+    @Test
+    public void test_limit_grows_givenSteadyLatency() {
+        // Arrange
+        GradientLimiter sut = limiter();
+
+        // Act
+        samples(sut, 20, FAST);
+
+        // Assert
+        Assertions.assertTrue(sut.getLimit() > 20, "Expected the limit to grow while latency holds, got " + sut.getLimit());
+
+    }
+
+    @Test
+    public void test_limit_staysPut_givenUnusedLimit() {
+        // Arrange
+        GradientLimiter sut = limiter();
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            sut.tryAcquire();
+            sut.onSuccess(FAST);
+        }
+
+        // Assert
+        Assertions.assertEquals(20, sut.getLimit(), "Expected fast samples at low occupancy not to raise the limit");
+
+    }
+
+    @Test
+    public void test_limit_shrinks_givenRisingLatency() {
+        // Arrange
+        GradientLimiter sut = limiter();
+        samples(sut, 20, FAST);
+        int before = sut.getLimit();
+
+        // Act
+        samples(sut, 10, SLOW);
+
+        // Assert
+        Assertions.assertTrue(sut.getLimit() < before, "Expected the limit to shrink once latency rises, " + before + " -> " + sut.getLimit());
+
+    }
+
+    @Test
+    public void test_limit_backsOff_givenDroppedCall() {
+        // Arrange
+        GradientLimiter sut = limiter();
+        Assertions.assertTrue(sut.tryAcquire());
+
+        // Act
+        sut.onDropped();
+
+        // Assert
+        Assertions.assertEquals(18, sut.getLimit(), "Expected a dropped call to apply the backoff ratio");
+        Assertions.assertEquals(0, sut.getInFlight(), "Expected the dropped call to give its slot back");
+
+    }
+
+    @Test
+    public void test_limit_staysWithinBounds_givenExtremeSamples() {
+        // Arrange
+        GradientLimiter sut = limiter();
+
+        // Act
+        samples(sut, 2_000, FAST);
+        int grown = sut.getLimit();
+
+        for (int i = 0; i < 100; i++) {
+            sut.tryAcquire();
+            sut.onDropped();
+        }
+
+        // Assert
+        Assertions.assertEquals(200, grown, "Expected the limit to stop at its maximum");
+        Assertions.assertEquals(2, sut.getLimit(), "Expected the limit to stop at its minimum");
+
+    }
+
+    @Test
+    public void test_tryAcquire_refuses_givenLimitReached() {
+        // Arrange
+        GradientLimiter sut = new GradientLimiter(2, 1, 10, 0.2, 1.5, 0.9, 600);
+
+        // Act
+        boolean first = sut.tryAcquire();
+        boolean second = sut.tryAcquire();
+        boolean third = sut.tryAcquire();
+
+        // Assert
+        Assertions.assertTrue(first && second, "Expected slots up to the limit to be granted");
+        Assertions.assertFalse(third, "Expected a call beyond the limit to be refused");
+
+        sut.onIgnore();
+        Assertions.assertTrue(sut.tryAcquire(), "Expected a given back slot to be granted again");
+
+    }
+
+}
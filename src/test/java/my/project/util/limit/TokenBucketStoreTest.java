@@ -0,0 +1,94 @@
+package my.project.util.limit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketStoreTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    // 10 per second is one token every 100ms, 5 of them at once
+    private final TokenBucketStore sut = new TokenBucketStore(10, 5, 1_000);
+
+    @Test
+    public void test_tryAcquire_allowsBurst_thenRefuses() {
+        // Act
+        long[] remaining = new long[5];
+        for (int i = 0; i < remaining.length; i++)
+            remaining[i] = sut.tryAcquire("client", 0);
+
+        long refused = sut.tryAcquire("client", 0);
+
+        // Assert
+        Assertions.assertArrayEquals(new long[] { 4, 3, 2, 1, 0 }, remaining, "Expected the tokens left to count down through the burst");
+        Assertions.assertTrue(refused < 0, "Expected the request after the burst to be refused");
+
+    }
+
+    @Test
+    public void test_tryAcquire_returnsWaitUntilNextToken_givenEmptyBucket() {
+        // Arrange
+        for (int i = 0; i < 5; i++)
+            sut.tryAcquire("client", 0);
+
+        // Act
+        long immediately = sut.tryAcquire("client", 0);
+        long later = sut.tryAcquire("client", 40 * MILLIS);
+
+        // Assert
+        Assertions.assertEquals(-100 * MILLIS, immediately, "Expected to wait one interval for the next token");
+        Assertions.assertEquals(-60 * MILLIS, later, "Expected the wait to shrink as time passes");
+
+    }
+
+    @Test
+    public void test_tryAcquire_refillsAtConfiguredRate() {
+        // Arrange
+        for (int i = 0; i < 5; i++)
+            sut.tryAcquire("client", 0);
+
+        // Act
+        long afterOneInterval = sut.tryAcquire("client", 100 * MILLIS);
+        long sameInstant = sut.tryAcquire("client", 100 * MILLIS);
+        long afterIdle = sut.tryAcquire("client", 10_000 * MILLIS);
+
+        // Assert
+        Assertions.assertEquals(0, afterOneInterval, "Expected one token back after one interval");
+        Assertions.assertTrue(sameInstant < 0, "Expected only one token back after one interval");
+        Assertions.assertEquals(4, afterIdle, "Expected a long idle client to get its whole burst back, and no more");
+
+    }
+
+    @Test
+    public void test_tryAcquire_keepsClientsApart() {
+        // Arrange
+        for (int i = 0; i < 5; i++)
+            sut.tryAcquire("busy", 0);
+
+        // Act
+        long other = sut.tryAcquire("other", 0);
+
+        // Assert
+        Assertions.assertEquals(4, other, "Expected another client to start with a full bucket");
+
+    }
+
+    @Test
+    public void test_evictIdle_dropsOnlyRefilledBuckets() {
+        // Arrange
+        sut.tryAcquire("idle", 0);
+
+        for (int i = 0; i < 5; i++)
+            sut.tryAcquire("busy", 150 * MILLIS);
+
+        // Act
+        sut.evictIdle(200 * MILLIS);
+
+        // Assert
+        Assertions.assertEquals(1, sut.size(), "Expected only the client still in debt to be kept");
+        Assertions.assertTrue(sut.tryAcquire("busy", 200 * MILLIS) < 0, "Expected the kept bucket to still be empty");
+        Assertions.assertEquals(4, sut.tryAcquire("idle", 200 * MILLIS), "Expected an evicted client to start over with a full bucket");
+
+    }
+
+}
@@ -0,0 +1,122 @@
+package my.project.web;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// every endpoint is held to a single call in flight, so one slow call is enough to fill it
+@SpringBootTest(properties = {
+        "user-service.concurrency-limit.initial-limit=1",
+        "user-service.concurrency-limit.min-limit=1",
+        "user-service.concurrency-limit.max-limit=1"
+})
+@ActiveProfiles("test")
+public class ConcurrencyLimitIntegrationTest {
+
+    private MockMvc mockMvc;
+
+    private final WebApplicationContext context;
+
+    @MockBean
+    private UserService userService;
+
+    @MockBean
+    private UserExporter userExporter;
+
+    @Autowired
+    public ConcurrencyLimitIntegrationTest(WebApplicationContext context) {
+        this.context = context;
+    }
+
+    @BeforeEach
+    public void setUp() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        this.mockMvc = null;
+    }
+
+    @Test
+    public void test_checkNameAvailability_returns503WithRetryAfter_givenEndpointAtItsLimit() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+
+        when(userService.checkUsernameAvailability("test_slow")).thenAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return false;
+        });
+
+        MvcResult slow = mockMvc
+                .perform(get("/user/test_slow"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Act
+        MvcResult shed = mockMvc
+                .perform(get("/user/test_fast"))
+                .andDo(print())
+                .andExpect(status().is(503))
+                .andReturn();
+
+        release.countDown();
+        slow.getAsyncResult(10_000);
+
+        // Assert
+        Assertions.assertNotNull(shed.getResponse().getHeader("Retry-After"), "expected Retry-After on a shed request");
+        verify(userService, times(0)).checkUsernameAvailability("test_fast");
+
+    }
+
+    @Test
+    public void test_exportUsers_releasesSlot_givenRequestEndsBeforeBodyIsWritten() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+
+        doAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return 0L;
+        }).when(userExporter).export(any(), any());
+
+        MvcResult abandoned = mockMvc
+                .perform(get("/user/export/ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Act
+        // the container ends the request, as on a timeout or a client that went away, while the body still waits
+        ((MockAsyncContext) abandoned.getRequest().getAsyncContext()).complete();
+
+        MvcResult next = mockMvc
+                .perform(get("/user/export/ndjson"))
+                .andReturn();
+
+        release.countDown();
+
+        // Assert
+        Assertions.assertNotEquals(503, next.getResponse().getStatus(), "expected the abandoned export to give its slot back");
+
+    }
+
+}
@@ -0,0 +1,296 @@
+package my.project.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import my.project.entity.User;
+import my.project.entity.dtos.UpdateUserRequest;
+import my.project.entity.dtos.UserPage;
+import my.project.entity.dtos.UserResponse;
+import my.project.util.shard.ShardContext;
+import my.project.util.shard.ShardRouter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The same API over three in memory H2 databases. Starts empty, data.sql is not run when sharded,
+ * even with the test profile asking for it.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "user-service.sharding.shards[0].url=jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1",
+        "user-service.sharding.shards[1].url=jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1",
+        "user-service.sharding.shards[2].url=jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "user-service.rate-limit.enabled=false"
+})
+public class ShardedUserControllerIntegrationTest {
+
+    private MockMvc mockMvc;
+
+    private final WebApplicationContext context;
+    private final ObjectMapper mapper;
+    private final UserRepository userRepo;
+    private final ShardRouter shardRouter;
+
+    @Autowired
+    public ShardedUserControllerIntegrationTest(WebApplicationContext context, ObjectMapper mapper,
+                                                UserRepository userRepo, ShardRouter shardRouter) {
+        this.context = context;
+        this.mapper = mapper;
+        this.userRepo = userRepo;
+        this.shardRouter = shardRouter;
+    }
+
+    @BeforeEach
+    public void setUp() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        this.mockMvc = null;
+    }
+
+    // handlers complete asynchronously, the response is only written by the async dispatch
+    private RequestBuilder async(RequestBuilder builder) throws Exception {
+        return asyncDispatch(mockMvc
+                .perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn());
+    }
+
+    private UserResponse create(String username) throws Exception {
+        MvcResult result = mockMvc
+                .perform(async(post("/user/create/" + username)))
+                .andExpect(status().is(201))
+                .andReturn();
+
+        return mapper.readValue(result.getResponse().getContentAsString(), UserResponse.class);
+    }
+
+    private String nameOnOtherShard(String prefix, int shard) {
+        for (int i = 0; ; i++) {
+            if (shardRouter.shardOf(prefix + i) != shard)
+                return prefix + i;
+        }
+    }
+
+    @Test
+    public void test_seedData_isNotLoaded_givenSharding() {
+        // Arrange
+        List<String> seeded = List.of("test1", "test2", "test3", "test4", "test5");
+
+        // Act
+        List<String> found = new ArrayList<>();
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++)
+            found.addAll(ShardContext.callOn(shard, () -> userRepo.findExistingUsernames(seeded)));
+
+        // Assert
+        Assertions.assertTrue(found.isEmpty(), "Expected no seed rows on any shard, found " + found);
+
+    }
+
+    @Test
+    public void test_addUser_storesUserOnShardOfItsName() throws Exception {
+        // Arrange
+        List<UserResponse> created = new ArrayList<>();
+
+        // Act
+        for (int i = 0; i < 12; i++)
+            created.add(create("test_shard_add_" + i));
+
+        long[] rows = new long[shardRouter.shardCount()];
+        for (int shard = 0; shard < rows.length; shard++)
+            rows[shard] = ShardContext.callOn(shard, userRepo::count);
+
+        // Assert
+        for (UserResponse user : created)
+            Assertions.assertEquals(shardRouter.shardOf(user.getUsername()), shardRouter.shardOf(user.getUserID()),
+                    "Expected id of " + user.getUsername() + " to encode the shard its name hashes to");
+
+        Assertions.assertEquals(3, rows.length, "Expected three shards");
+        for (long count : rows)
+            Assertions.assertTrue(count > 0, "Expected users on every shard");
+
+    }
+
+    @Test
+    public void test_inheritedRepositoryMethods_areRoutedOrRefused() throws Exception {
+        // Arrange
+        UserResponse moved = create("test_shard_inherited");
+        String newUsername = nameOnOtherShard("test_shard_inherited_", shardRouter.shardOf(moved.getUserID()));
+
+        UpdateUserRequest request = new UpdateUserRequest();
+        request.setUserID(moved.getUserID());
+        request.setUsername(newUsername);
+
+        mockMvc
+                .perform(async(patch("/user/edit")
+                        .content(mapper.writeValueAsString(request))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )).andExpect(status().is(200));
+
+        // Act
+        List<User> all = userRepo.findAll();
+
+        // Assert
+        Assertions.assertEquals(1, all.stream().filter(user -> user.getUserID().equals(moved.getUserID())).count(),
+                "Expected a renamed user once, without its redirect");
+        Assertions.assertTrue(userRepo.existsById(moved.getUserID()), "Expected lookup by id on the shard in the id");
+
+        Assertions.assertThrows(IllegalStateException.class, userRepo::count,
+                "Expected a single shard method to refuse running without a bound shard");
+
+    }
+
+    @Test
+    public void test_listUsers_mergesEveryShardInIdOrder() throws Exception {
+        // Arrange
+        List<Long> createdIds = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            createdIds.add(create("test_shard_list_" + i).getUserID());
+
+        // Act
+        List<Long> listedIds = new ArrayList<>();
+        Long after = null;
+
+        do {
+            MvcResult result = mockMvc
+                    .perform(async(after == null
+                            ? get("/user").param("limit", "3")
+                            : get("/user").param("after", String.valueOf(after)).param("limit", "3")))
+                    .andExpect(status().is(200))
+                    .andReturn();
+
+            UserPage page = mapper.readValue(result.getResponse().getContentAsString(), UserPage.class);
+            for (UserResponse user : page.getUsers())
+                listedIds.add(user.getUserID());
+
+            after = page.getNextCursor();
+        } while (after != null);
+
+        // Assert
+        for (int i = 1; i < listedIds.size(); i++)
+            Assertions.assertTrue(listedIds.get(i) > listedIds.get(i - 1), "Expected pages in ascending id order");
+
+        Assertions.assertTrue(listedIds.containsAll(createdIds), "Expected pages to include users of every shard");
+
+    }
+
+    @Test
+    public void test_checkNamesAvailability_gathersEveryShard() throws Exception {
+        // Arrange
+        List<String> taken = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+            taken.add(create("test_shard_taken_" + i).getUsername());
+
+        List<String> usernames = new ArrayList<>(taken);
+        usernames.add("test_shard_free_1");
+        usernames.add("test_shard_free_2");
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(post("/user/availability")
+                        .content(mapper.writeValueAsString(usernames))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )).andDo(print())
+                .andExpect(status().is(200))
+                .andReturn();
+
+        Map<String, Boolean> response = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                new TypeReference<Map<String, Boolean>>() {}
+        );
+
+        // Assert
+        for (String username : taken)
+            Assertions.assertFalse(response.get(username), "expected " + username + " to be unavailable");
+
+        Assertions.assertTrue(response.get("test_shard_free_1"), "expected free name to be available");
+        Assertions.assertTrue(response.get("test_shard_free_2"), "expected free name to be available");
+
+    }
+
+    @Test
+    public void test_updateUser_movesNameToShardItHashesTo() throws Exception {
+        // Arrange
+        UserResponse user = create("test_shard_move");
+        String newUsername = nameOnOtherShard("test_shard_moved_", shardRouter.shardOf(user.getUserID()));
+
+        UpdateUserRequest request = new UpdateUserRequest();
+        request.setUserID(user.getUserID());
+        request.setUsername(newUsername);
+
+        // Act
+        mockMvc
+                .perform(async(patch("/user/edit")
+                        .content(mapper.writeValueAsString(request))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )).andDo(print())
+                .andExpect(status().is(200));
+
+        // Assert
+        mockMvc.perform(async(get("/user/" + newUsername))).andExpect(status().is(409));
+        mockMvc.perform(async(post("/user/create/" + newUsername))).andExpect(status().is(409));
+
+        Assertions.assertEquals(user.getUserID(), userRepo.findByUsername(newUsername).get().getUserID(),
+                "Expected the new name to lead back to the same user");
+
+        mockMvc.perform(async(get("/user/test_shard_move"))).andExpect(status().is(204));
+        create("test_shard_move");
+
+    }
+
+    @Test
+    public void test_deleteUser_releasesNameHeldOnOtherShard() throws Exception {
+        // Arrange
+        UserResponse user = create("test_shard_delete");
+        String newUsername = nameOnOtherShard("test_shard_deleted_", shardRouter.shardOf(user.getUserID()));
+
+        UpdateUserRequest request = new UpdateUserRequest();
+        request.setUserID(user.getUserID());
+        request.setUsername(newUsername);
+
+        mockMvc
+                .perform(async(patch("/user/edit")
+                        .content(mapper.writeValueAsString(request))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )).andExpect(status().is(200));
+
+        // Act
+        mockMvc
+                .perform(async(delete("/user/" + user.getUserID())))
+                .andDo(print())
+                .andExpect(status().is(204));
+
+        // Assert
+        Assertions.assertFalse(userRepo.findByUsername(newUsername).isPresent(), "Expected no user to hold the name any more");
+
+        create(newUsername);
+
+    }
+
+}
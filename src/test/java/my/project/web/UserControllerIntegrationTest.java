@@ -2,8 +2,14 @@ package my.project.web;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+
 import my.project.entity.User;
+import my.project.entity.dtos.BulkCreateResult;
+import my.project.entity.dtos.ImportProgress;
+import my.project.entity.dtos.ImportRowError;
 import my.project.entity.dtos.UpdateUserRequest;
+import my.project.entity.dtos.UserPage;
 import my.project.entity.dtos.UserResponse;
 import my.project.util.exception.ExceptionResponse;
 import my.project.web.UserRepository;
@@ -15,18 +21,30 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@SpringBootTest
+// the seeded users of data.sql are only loaded by the test profile
+@SpringBootTest(properties = {
+        "user-service.rate-limit.enabled=true",
+        "user-service.rate-limit.client-keys=test_rate_limited_client"
+})
+@ActiveProfiles("test")
 public class UserControllerIntegrationTest {
 
     private MockMvc mockMvc;
@@ -52,10 +70,35 @@ public class UserControllerIntegrationTest {
         this.mockMvc = null;
     }
 
+    // handlers complete asynchronously, the response is only written by the async dispatch
+    private RequestBuilder async(RequestBuilder builder) throws Exception {
+        return asyncDispatch(mockMvc
+                .perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn());
+    }
+
+    private UserResponse create(String username) throws Exception {
+        MvcResult result = mockMvc
+                .perform(async(post("/user/create/" + username)))
+                .andExpect(status().is(201))
+                .andReturn();
+
+        return mapper.readValue(result.getResponse().getContentAsString(), UserResponse.class);
+    }
+
+    // imports are limited per client, tests that import from one address would share a bucket
+    private static RequestPostProcessor remoteAddress(String address) {
+        return request -> {
+            request.setRemoteAddr(address);
+            return request;
+        };
+    }
+
     @Test
     public void test_checkNameAvailability_returnsNoContent_givenProvidedUsernameNotTaken() throws Exception {
         mockMvc
-                .perform(get("/user/test6"))
+                .perform(async(get("/user/test6")))
                 .andDo(print())
                 .andExpect(status().is(204))
                 .andReturn();
@@ -64,12 +107,84 @@ public class UserControllerIntegrationTest {
     @Test
     public void test_checkNameAvailability_returnsConflict_givenProvidedUsernameTaken() throws Exception {
         mockMvc
-                .perform(get("/user/test1"))
+                .perform(async(get("/user/test1")))
                 .andDo(print())
                 .andExpect(status().is(409))
                 .andReturn();
     }
 
+    @Test
+    public void test_checkNamesAvailability_returns200_withAvailabilityPerName() throws Exception {
+        // Arrange
+        List<String> usernames = List.of("test1", "test_free_1");
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(post("/user/availability")
+                        .content(mapper.writeValueAsString(usernames))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )).andDo(print())
+                .andExpect(status().is(200))
+                .andReturn();
+
+        Map<String, Boolean> response = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                new TypeReference<Map<String, Boolean>>() {}
+        );
+
+        // Assert
+        Assertions.assertFalse(response.get("test1"), "expected taken name to be unavailable");
+        Assertions.assertTrue(response.get("test_free_1"), "expected free name to be available");
+
+    }
+
+    @Test
+    public void test_checkNamesAvailability_returns400_givenNullOrBlankName() throws Exception {
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(post("/user/availability")
+                        .content("[\"test1\", null, \" \"]")
+                        .contentType(MediaType.APPLICATION_JSON)
+                )).andDo(print())
+                .andExpect(status().is(400))
+                .andReturn();
+
+        ExceptionResponse response = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                ExceptionResponse.class
+        );
+
+        // Assert
+        Assertions.assertEquals(response.getException(), "InvalidRequestException", "expected reason for error to be InvalidRequestException");
+
+    }
+
+    @Test
+    public void test_searchUsernames_returns200_withMatchesInNameOrder() throws Exception {
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(get("/user/search/test").param("limit", "3")))
+                .andDo(print())
+                .andExpect(status().is(200))
+                .andReturn();
+
+        List<UserResponse> response = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                new TypeReference<List<UserResponse>>() {}
+        );
+
+        // Assert
+        Assertions.assertEquals(3, response.size(), "Expected results up to the limit");
+
+        for (int i = 0; i < response.size(); i++) {
+            Assertions.assertTrue(response.get(i).getUsername().startsWith("test"), "Expected only matching names");
+
+            if (i > 0)
+                Assertions.assertTrue(response.get(i - 1).getUsername().compareTo(response.get(i).getUsername()) < 0, "Expected username order");
+        }
+
+    }
+
     @Test
     public void test_getUser_returns200_givenValidId() throws Exception {
         // Arrange
@@ -77,7 +192,7 @@ public class UserControllerIntegrationTest {
 
         // Act
         MvcResult result = mockMvc
-                .perform(get("/user/id/" + validId))
+                .perform(async(get("/user/id/" + validId)))
                 .andDo(print())
                 .andExpect(status().is(200))
                 .andReturn();
@@ -95,6 +210,79 @@ public class UserControllerIntegrationTest {
 
     }
 
+    @Test
+    public void test_getUser_returnsCbor_givenCborAccepted() throws Exception {
+        // Arrange
+        UserResponse user = create("test_cbor");
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(get("/user/id/" + user.getUserID()).accept("application/cbor")))
+                .andDo(print())
+                .andExpect(status().is(200))
+                .andReturn();
+
+        UserResponse response = Jackson2ObjectMapperBuilder.cbor().build().readValue(
+                result.getResponse().getContentAsByteArray(),
+                UserResponse.class
+        );
+
+        // Assert
+        Assertions.assertEquals("application/cbor", result.getResponse().getContentType(), "Expected return to have CBOR body");
+        Assertions.assertTrue(result.getResponse().getHeaders("Vary").contains("Accept"), "Expected response to vary by Accept");
+
+        Assertions.assertEquals("test_cbor", response.getUsername(), "expected name of test_cbor");
+
+    }
+
+    @Test
+    public void test_getUser_returns404InCbor_givenInvalidIdAndCborAccepted() throws Exception {
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(get("/user/id/365").accept("application/cbor")))
+                .andDo(print())
+                .andExpect(status().is(404))
+                .andReturn();
+
+        ExceptionResponse response = Jackson2ObjectMapperBuilder.cbor().build().readValue(
+                result.getResponse().getContentAsByteArray(),
+                ExceptionResponse.class
+        );
+
+        // Assert
+        Assertions.assertEquals("application/cbor", result.getResponse().getContentType(), "Expected error to have CBOR body");
+
+        Assertions.assertEquals(response.getException(), "UserNotFoundException", "expected reason for error to be UserNotFoundException");
+
+    }
+
+    @Test
+    public void test_getUser_returns304_givenMatchingETag() throws Exception {
+        // Arrange
+        UserResponse user = create("test_etag_match");
+
+        MvcResult first = mockMvc
+                .perform(async(get("/user/id/" + user.getUserID())))
+                .andExpect(status().is(200))
+                .andReturn();
+
+        String eTag = first.getResponse().getHeader("ETag");
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(get("/user/id/" + user.getUserID()).header("If-None-Match", eTag)))
+                .andDo(print())
+                .andExpect(status().is(304))
+                .andReturn();
+
+        // Assert
+        Assertions.assertNotNull(eTag, "Expected user to be sent with an ETag");
+        Assertions.assertEquals(eTag, result.getResponse().getHeader("ETag"), "Expected 304 to repeat the ETag");
+        Assertions.assertTrue(result.getResponse().getHeaders("Vary").contains("Accept"), "Expected 304 to vary by Accept");
+        Assertions.assertEquals(0, result.getResponse().getContentLength(), "Expected no body with 304");
+
+    }
+
     @Test
     public void test_getUser_returns404_givenInvalidId() throws Exception {
         // Arrange
@@ -102,7 +290,7 @@ public class UserControllerIntegrationTest {
 
         // Act
         MvcResult result = mockMvc
-                .perform(get("/user/id/" + invalidId))
+                .perform(async(get("/user/id/" + invalidId)))
                 .andDo(print())
                 .andExpect(status().is(404))
                 .andReturn();
@@ -120,6 +308,89 @@ public class UserControllerIntegrationTest {
 
     }
 
+    @Test
+    public void test_listUsers_returns200_withKeysetPages() throws Exception {
+        // Arrange
+        for (int i = 0; i < 3; i++)
+            create("test_page_" + i);
+
+        // Act
+        MvcResult first = mockMvc
+                .perform(async(get("/user").param("limit", "2")))
+                .andDo(print())
+                .andExpect(status().is(200))
+                .andReturn();
+
+        UserPage firstPage = mapper.readValue(first.getResponse().getContentAsString(), UserPage.class);
+        Assertions.assertNotNull(firstPage.getNextCursor(), "Expected a cursor with more users than fit on the first page");
+
+        MvcResult second = mockMvc
+                .perform(async(get("/user")
+                        .param("after", String.valueOf(firstPage.getNextCursor()))
+                        .param("limit", "2")
+                )).andDo(print())
+                .andExpect(status().is(200))
+                .andReturn();
+
+        UserPage secondPage = mapper.readValue(second.getResponse().getContentAsString(), UserPage.class);
+
+        // Assert
+        Assertions.assertEquals(2, firstPage.getUsers().size(), "Expected first page to be full");
+        Assertions.assertEquals(firstPage.getUsers().get(1).getUserID(), firstPage.getNextCursor(), "Expected cursor to be the last id on the page");
+
+        Assertions.assertFalse(secondPage.getUsers().isEmpty(), "Expected second page to continue after the cursor");
+        Assertions.assertTrue(secondPage.getUsers().get(0).getUserID() > firstPage.getNextCursor(), "Expected second page to start after the cursor");
+
+    }
+
+    @Test
+    public void test_exportUsers_streamsOneUserPerLine_afterSinceCursor() throws Exception {
+        // Arrange
+        Long since = 1L;
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(get("/user/export/ndjson").param("since", String.valueOf(since))))
+                .andExpect(status().is(200))
+                .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+
+        // Assert
+        Assertions.assertEquals("application/x-ndjson", result.getResponse().getContentType(), "Expected NDJSON body");
+
+        Assertions.assertTrue(lines.length > 0, "Expected exported users");
+
+        Long previous = since;
+        for (String line : lines) {
+            UserResponse user = mapper.readValue(line, UserResponse.class);
+
+            Assertions.assertTrue(user.getUserID() > previous, "Expected users after the cursor in id order");
+            previous = user.getUserID();
+        }
+
+    }
+
+    @Test
+    public void test_exportUsers_holdsBackUsersNewerThanSafetyLag() throws Exception {
+        // Arrange
+        UserResponse recent = create("test_export_recent");
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(get("/user/export/ndjson")))
+                .andExpect(status().is(200))
+                .andReturn();
+
+        // Assert
+        for (String line : result.getResponse().getContentAsString().split("\n")) {
+            if (!line.isEmpty())
+                Assertions.assertNotEquals(recent.getUserID(), mapper.readValue(line, UserResponse.class).getUserID(),
+                        "Expected a user created within the safety lag to be held back");
+        }
+
+    }
+
     @Test
     public void test_addUser_returns201_givenValidName() throws Exception {
         // Arrange
@@ -127,7 +398,7 @@ public class UserControllerIntegrationTest {
 
         // Act
         MvcResult result = mockMvc
-                .perform(post("/user/create/" + newUsername))
+                .perform(async(post("/user/create/" + newUsername)))
                 .andDo(print())
                 .andExpect(status().is(201))
                 .andReturn();
@@ -155,7 +426,7 @@ public class UserControllerIntegrationTest {
 
         // Act
         MvcResult result = mockMvc
-                .perform(post("/user/create/" + newUsername))
+                .perform(async(post("/user/create/" + newUsername)))
                 .andDo(print())
                 .andExpect(status().is(409))
                 .andReturn();
@@ -173,6 +444,231 @@ public class UserControllerIntegrationTest {
 
     }
 
+    @Test
+    public void test_addUser_returns400_givenTooLongUsername() throws Exception {
+        // Arrange
+        String newUsername = "a".repeat(User.MAX_USERNAME_LENGTH + 1);
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(post("/user/create/" + newUsername)))
+                .andDo(print())
+                .andExpect(status().is(400))
+                .andReturn();
+
+        ExceptionResponse response = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                ExceptionResponse.class
+        );
+
+        // Assert
+        Assertions.assertEquals(response.getException(), "InvalidRequestException", "expected reason for error to be InvalidRequestException");
+        Assertions.assertFalse(userRepo.findByUsername(newUsername).isPresent(), "Expected no user to be created");
+
+    }
+
+    @Test
+    public void test_addUsers_returns200_withPerNameResults() throws Exception {
+        // Arrange
+        create("test_bulk_taken");
+        List<String> usernames = List.of("test_bulk_1", "test_bulk_taken", "test_bulk_2");
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(post("/user/create")
+                        .content(mapper.writeValueAsString(usernames))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )).andDo(print())
+                .andExpect(status().is(200))
+                .andReturn();
+
+        List<BulkCreateResult> response = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                new TypeReference<List<BulkCreateResult>>() {}
+        );
+
+        // Assert
+        Assertions.assertEquals(3, response.size(), "Expected one result per requested name");
+
+        Assertions.assertEquals(BulkCreateResult.Status.CREATED, response.get(0).getStatus(), "expected new name to be created");
+        Assertions.assertEquals(BulkCreateResult.Status.CONFLICT, response.get(1).getStatus(), "expected existing name to conflict");
+        Assertions.assertEquals(BulkCreateResult.Status.CREATED, response.get(2).getStatus(), "expected new name to be created");
+
+        Assertions.assertTrue(userRepo.findByUsername("test_bulk_1").isPresent(), "Expected new user to be in database");
+        Assertions.assertTrue(userRepo.findByUsername("test_bulk_2").isPresent(), "Expected new user to be in database");
+
+    }
+
+    @Test
+    public void test_importUsers_reportsProgressAndRowErrors_givenCsvUpload() throws Exception {
+        // Arrange
+        String csv = "username\n"
+                + "test_import_1\n"
+                + "test1\n"
+                + "test_import_1\n"
+                + "\n"
+                + "test_import_2\n";
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(post("/user/import")
+                        .content(csv)
+                        .contentType("text/csv")
+                )).andDo(print())
+                .andExpect(status().is(200))
+                .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+
+        ImportRowError blank = mapper.readValue(lines[0], ImportRowError.class);
+        ImportProgress summary = mapper.readValue(lines[lines.length - 1], ImportProgress.class);
+
+        // Assert
+        Assertions.assertEquals(ImportRowError.Reason.BLANK, blank.getError(), "expected blank row to be reported");
+        Assertions.assertEquals(5L, blank.getRow(), "expected line number of the blank row");
+
+        Assertions.assertTrue(summary.isComplete(), "expected final line to be the completed summary");
+        Assertions.assertEquals(5L, summary.getRows(), "expected every data row to be counted");
+        Assertions.assertEquals(2L, summary.getCreated(), "expected new names to be created");
+        Assertions.assertEquals(2L, summary.getConflicts(), "expected existing and repeated names to conflict");
+        Assertions.assertEquals(1L, summary.getInvalid(), "expected blank row to be invalid");
+
+        Assertions.assertTrue(userRepo.findByUsername("test_import_1").isPresent(), "Expected imported user to be in database");
+        Assertions.assertTrue(userRepo.findByUsername("test_import_2").isPresent(), "Expected imported user to be in database");
+
+    }
+
+    @Test
+    public void test_importUsers_rejectsTooLongRow_andCreatesTheRest() throws Exception {
+        // Arrange
+        String tooLong = "a".repeat(300);
+        String csv = "username\n"
+                + "test_import_probe_ok\n"
+                + tooLong + "\n";
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(post("/user/import")
+                        .with(remoteAddress("192.0.2.20"))
+                        .content(csv)
+                        .contentType("text/csv")
+                )).andDo(print())
+                .andExpect(status().is(200))
+                .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+
+        ImportRowError rejected = mapper.readValue(lines[0], ImportRowError.class);
+        ImportProgress summary = mapper.readValue(lines[lines.length - 1], ImportProgress.class);
+
+        // Assert
+        Assertions.assertEquals(ImportRowError.Reason.TOO_LONG, rejected.getError(), "expected the long row to be rejected on its own");
+        Assertions.assertEquals(3L, rejected.getRow(), "expected line number of the long row");
+
+        Assertions.assertTrue(summary.isComplete(), "expected final line to be the completed summary");
+        Assertions.assertEquals(1L, summary.getCreated(), "expected the valid row to be created");
+        Assertions.assertEquals(1L, summary.getInvalid(), "expected the long row to be invalid");
+
+        Assertions.assertTrue(userRepo.findByUsername("test_import_probe_ok").isPresent(), "Expected imported user to be in database");
+
+    }
+
+    @Test
+    public void test_importUsers_keepsQuotedCommas_andRejectsBrokenQuotes() throws Exception {
+        // Arrange
+        String csv = "username\n"
+                + "\"test_import,quoted\",ignored\n"
+                + "\"test_import_unclosed\n"
+                + "test_import\"stray\n";
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(post("/user/import")
+                        .with(remoteAddress("192.0.2.21"))
+                        .content(csv)
+                        .contentType("text/csv")
+                )).andDo(print())
+                .andExpect(status().is(200))
+                .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+
+        ImportRowError unclosed = mapper.readValue(lines[0], ImportRowError.class);
+        ImportRowError stray = mapper.readValue(lines[1], ImportRowError.class);
+        ImportProgress summary = mapper.readValue(lines[lines.length - 1], ImportProgress.class);
+
+        // Assert
+        Assertions.assertEquals(ImportRowError.Reason.MALFORMED, unclosed.getError(), "expected an unclosed quote to be malformed");
+        Assertions.assertEquals(3L, unclosed.getRow(), "expected line number of the unclosed quote");
+        Assertions.assertEquals(ImportRowError.Reason.MALFORMED, stray.getError(), "expected a stray quote to be malformed");
+        Assertions.assertEquals(1L, summary.getCreated(), "expected the quoted name to be created");
+
+        Assertions.assertTrue(userRepo.findByUsername("test_import,quoted").isPresent(), "Expected the comma to stay part of the name");
+        Assertions.assertFalse(userRepo.findByUsername("\"test_import").isPresent(), "Expected the name not to be cut at the comma");
+
+    }
+
+    @Test
+    public void test_importUsers_returns429WithRetryAfter_givenClientOverItsRate() throws Exception {
+        // Arrange
+        String apiKey = "test_rate_limited_client";
+
+        mockMvc
+                .perform(async(post("/user/import")
+                        .header("X-API-Key", apiKey)
+                        .content("username\ntest_rate_limit_1\n")
+                        .contentType("text/csv")
+                )).andExpect(status().is(200));
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(post("/user/import")
+                        .header("X-API-Key", apiKey)
+                        .content("username\ntest_rate_limit_2\n")
+                        .contentType("text/csv")
+                ).andDo(print())
+                .andExpect(status().is(429))
+                .andReturn();
+
+        // Assert
+        Assertions.assertNotNull(result.getResponse().getHeader("Retry-After"), "expected Retry-After on a limited request");
+        Assertions.assertEquals("0", result.getResponse().getHeader("X-RateLimit-Remaining"), "expected no tokens left");
+
+        Assertions.assertFalse(userRepo.findByUsername("test_rate_limit_2").isPresent(), "Expected limited import to create nothing");
+
+    }
+
+    @Test
+    public void test_importUsers_returns429_givenUnknownKeysFromOneAddress() throws Exception {
+        // Arrange
+        RequestPostProcessor address = request -> {
+            request.setRemoteAddr("192.0.2.10");
+            return request;
+        };
+
+        mockMvc
+                .perform(async(post("/user/import")
+                        .with(address)
+                        .header("X-API-Key", "test_made_up_key_1")
+                        .content("username\ntest_rate_limit_unknown_1\n")
+                        .contentType("text/csv")
+                )).andExpect(status().is(200));
+
+        // Act
+        mockMvc
+                .perform(post("/user/import")
+                        .with(address)
+                        .header("X-API-Key", "test_made_up_key_2")
+                        .content("username\ntest_rate_limit_unknown_2\n")
+                        .contentType("text/csv")
+                ).andDo(print())
+                .andExpect(status().is(429));
+
+        // Assert
+        Assertions.assertFalse(userRepo.findByUsername("test_rate_limit_unknown_2").isPresent(), "Expected a new key not to get a fresh bucket");
+
+    }
+
     @Test
     public void test_updateUser_returns200_givenValidUpdateRequest() throws Exception {
         // Arrange
@@ -185,10 +681,10 @@ public class UserControllerIntegrationTest {
 
         // Act
         MvcResult result = mockMvc
-                .perform(patch("/user/edit")
+                .perform(async(patch("/user/edit")
                         .content(mapper.writeValueAsString(request))
                         .contentType(MediaType.APPLICATION_JSON)
-                ).andDo(print())
+                )).andDo(print())
                 .andExpect(status().is(200))
                 .andReturn();
 
@@ -220,10 +716,10 @@ public class UserControllerIntegrationTest {
 
         // Act
         MvcResult result = mockMvc
-                .perform(patch("/user/edit")
+                .perform(async(patch("/user/edit")
                         .content(mapper.writeValueAsString(request))
                         .contentType(MediaType.APPLICATION_JSON)
-                ).andDo(print())
+                )).andDo(print())
                 .andExpect(status().is(404))
                 .andReturn();
 
@@ -256,10 +752,10 @@ public class UserControllerIntegrationTest {
 
         // Act
         MvcResult result = mockMvc
-                .perform(patch("/user/edit")
+                .perform(async(patch("/user/edit")
                         .content(mapper.writeValueAsString(request))
                         .contentType(MediaType.APPLICATION_JSON)
-                ).andDo(print())
+                )).andDo(print())
                 .andExpect(status().is(409))
                 .andReturn();
 
@@ -279,6 +775,41 @@ public class UserControllerIntegrationTest {
         Assertions.assertEquals(response.getException(), "DuplicateUsernameException", "expected reason for error to be DuplicateUsernameException");
     }
 
+    @Test
+    public void test_updateUser_returns412_givenStaleIfMatch() throws Exception {
+        // Arrange
+        UserResponse user = create("test_edit_before_stale");
+        Long userId = user.getUserID();
+        String newUsername = "test_edit_stale";
+
+        UpdateUserRequest request = new UpdateUserRequest();
+        request.setUserID(userId);
+        request.setUsername(newUsername);
+
+        // Act
+        MvcResult result = mockMvc
+                .perform(async(patch("/user/edit")
+                        .header("If-Match", "\"999\"")
+                        .content(mapper.writeValueAsString(request))
+                        .contentType(MediaType.APPLICATION_JSON)
+                )).andDo(print())
+                .andExpect(status().is(412))
+                .andReturn();
+
+        ExceptionResponse response = mapper.readValue(
+                result.getResponse().getContentAsString(),
+                ExceptionResponse.class
+        );
+
+        // Assert
+        Assertions.assertFalse(userRepo.findByUsername(newUsername).isPresent(), "Expected new username to not be persisted to database");
+        Assertions.assertEquals(user.getUsername(), userRepo.findById(userId).get().getUsername(), "Expected user to keep its name");
+
+        Assertions.assertEquals(response.getStatusCode(), 412, "expected status code of 412");
+        Assertions.assertEquals(response.getException(), "PreconditionFailedException", "expected reason for error to be PreconditionFailedException");
+
+    }
+
     @Test
     public void test_deleteUser_returns204_givenValidId() throws Exception {
         // Arrange
@@ -286,7 +817,7 @@ public class UserControllerIntegrationTest {
 
         // Act
         MvcResult result = mockMvc
-                .perform(delete("/user/" + validId))
+                .perform(async(delete("/user/" + validId)))
                 .andDo(print())
                 .andExpect(status().is(204))
                 .andReturn();
@@ -305,7 +836,7 @@ public class UserControllerIntegrationTest {
 
         // Act
         MvcResult result = mockMvc
-                .perform(delete("/user/" + invalidId))
+                .perform(async(delete("/user/" + invalidId)))
                 .andDo(print())
                 .andExpect(status().is(404))
                 .andReturn();
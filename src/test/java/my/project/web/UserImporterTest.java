@@ -0,0 +1,94 @@
+package my.project.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import my.project.entity.dtos.BulkCreateResult;
+import my.project.entity.dtos.ImportProgress;
+import my.project.entity.dtos.ImportRowError;
+import my.project.entity.dtos.UserResponse;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+public class UserImporterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void test_importUsers_reportsFailedChunk_andKeepsGoing() throws Exception {
+        // Arrange
+        UserService mockUserService = mock(UserService.class);
+        UserImporter sut = new UserImporter(mockUserService, mapper, 2, 10);
+
+        when(mockUserService.addUsers(List.of("first", "second")))
+                .thenThrow(new DataAccessResourceFailureException("connection lost"));
+        when(mockUserService.addUsers(List.of("third")))
+                .thenReturn(List.of(BulkCreateResult.created(new UserResponse(3l, "third"))));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        ImportProgress progress = sut.importUsers(
+                new ByteArrayInputStream("first\nsecond\nthird\n".getBytes(StandardCharsets.UTF_8)), UserImporter.CSV, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+
+        // Assert
+        Assertions.assertEquals(ImportRowError.Reason.FAILED, mapper.readValue(lines[0], ImportRowError.class).getError(), "expected each row of the failed chunk to be reported");
+        Assertions.assertEquals(2L, mapper.readValue(lines[1], ImportRowError.class).getRow(), "expected line number of the second failed row");
+
+        Assertions.assertTrue(progress.isComplete(), "expected the import to finish after a failed chunk");
+        Assertions.assertEquals(2L, progress.getFailed(), "expected the rows of the failed chunk to be counted");
+        Assertions.assertEquals(1L, progress.getCreated(), "expected the next chunk to be written");
+        Assertions.assertTrue(mapper.readValue(lines[lines.length - 1], ImportProgress.class).isComplete(), "expected the final summary line");
+
+    }
+
+    @Test
+    public void test_importUsers_rejectsOverlongRow_withoutStoppingTheUpload() throws Exception {
+        // Arrange
+        UserService mockUserService = mock(UserService.class);
+        UserImporter sut = new UserImporter(mockUserService, mapper, 10, 10);
+
+        when(mockUserService.addUsers(List.of("before", "after")))
+                .thenReturn(List.of(
+                        BulkCreateResult.created(new UserResponse(1l, "before")),
+                        BulkCreateResult.created(new UserResponse(2l, "after"))
+                ));
+
+        String upload = "before\r\n" + "x".repeat(UserImporter.MAX_ROW_LENGTH * 4) + "\r\nafter\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        ImportProgress progress = sut.importUsers(
+                new ByteArrayInputStream(upload.getBytes(StandardCharsets.UTF_8)), UserImporter.CSV, out);
+
+        ImportRowError rejected = mapper.readValue(out.toString(StandardCharsets.UTF_8).split("\n")[0], ImportRowError.class);
+
+        // Assert
+        Assertions.assertEquals(ImportRowError.Reason.TOO_LONG, rejected.getError(), "expected the overlong row to be rejected");
+        Assertions.assertEquals(2L, rejected.getRow(), "expected line number of the overlong row");
+        Assertions.assertNull(rejected.getUsername(), "expected the overlong row not to be echoed back");
+
+        Assertions.assertEquals(3L, progress.getRows(), "expected every row to be counted");
+        Assertions.assertEquals(2L, progress.getCreated(), "expected the rows around it to be created");
+
+    }
+
+    @Test
+    public void test_constructor_rejectsChunkSize_largerThanBulkMaximum() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> new UserImporter(mock(UserService.class), mapper, 5_001, 5_000),
+                "Chunks larger than addUsers accepts should fail at startup"
+        );
+    }
+
+}
@@ -1,10 +1,24 @@
 package my.project.web;
 
+import io.prometheus.client.CollectorRegistry;
+
 import my.project.entity.User;
+import my.project.entity.dtos.BulkCreateResult;
 import my.project.entity.dtos.UpdateUserRequest;
+import my.project.entity.dtos.UserPage;
 import my.project.entity.dtos.UserResponse;
+import my.project.util.cache.UserResponseCache;
+import my.project.util.cache.bus.LoopbackInvalidationBus;
+import my.project.util.cache.bus.UserChangeEvent;
+import my.project.util.coalesce.SingleFlights;
 import my.project.util.exception.exceptions.DuplicateUsernameException;
+import my.project.util.exception.exceptions.InvalidRequestException;
+import my.project.util.exception.exceptions.PreconditionFailedException;
+import my.project.util.exception.exceptions.ServiceUnavailableException;
 import my.project.util.exception.exceptions.UserNotFoundException;
+import my.project.util.index.UsernameIndex;
+import my.project.util.index.UsernamePrefixIndex;
+import my.project.util.shard.ShardRouter;
 import my.project.web.UserRepository;
 
 import my.project.web.UserService;
@@ -12,8 +26,25 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Assertions;
-
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.DataException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.*;
 
@@ -21,33 +52,65 @@ public class UserServiceTest {
 
     private UserService sut;
     private UserRepository mockUserRepo;
+    private UsernameIndex usernameIndex;
+    private UsernamePrefixIndex prefixIndex;
+    private CollectorRegistry flightMetrics;
 
     @BeforeEach
     public void setUp() {
         mockUserRepo = mock(UserRepository.class);
-        sut = new UserService(mockUserRepo);
+        usernameIndex = new UsernameIndex(mockUserRepo, new CollectorRegistry(), 1000, 0.01, 0.25);
+        prefixIndex = new UsernamePrefixIndex(mockUserRepo, new CollectorRegistry(), 100, Duration.ofMinutes(1));
+        flightMetrics = new CollectorRegistry();
+        sut = new UserService(
+                mockUserRepo,
+                usernameIndex,
+                prefixIndex,
+                new UserResponseCache(new CollectorRegistry(), 100, Duration.ofMinutes(1), Duration.ofMinutes(1)),
+                new UserBatchWriter(mockUserRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()),
+                new UserGroupCommitter(new UserBatchWriter(mockUserRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()), new CollectorRegistry(), false, 100, Duration.ofMillis(2), 1000),
+                new SingleFlights(flightMetrics, true),
+                new LoopbackInvalidationBus(),
+                10,
+                10,
+                2,
+                2
+        );
     }
 
     @AfterEach
     public void tearDown() {
+        usernameIndex.shutdown();
+        prefixIndex.shutdown();
+        usernameIndex = null;
+        prefixIndex = null;
+        flightMetrics = null;
         sut = null;
         mockUserRepo = null;
     }
 
+    // what the repository throws for a name that is already taken, as translated from H2
+    private static DataIntegrityViolationException usernameTaken() {
+        return new DataIntegrityViolationException("could not execute statement",
+                new ConstraintViolationException("Unique index or primary key violation", null,
+                        "PUBLIC.UK_USER_USERNAME_INDEX_2 ON PUBLIC.USER(USERNAME)"));
+    }
+
     @Test
     public void test_getUserById_returnsUserReponse_givenValidId() {
         // Arrange
         Long valid_userID = 1l;
-        User foundUser = new User(1l, "valid");
-        Optional<User> foundUserOptional = Optional.of(foundUser);
+        UserResponse foundUser = new UserResponse(1l, "valid");
+        Optional<UserResponse> foundUserOptional = Optional.of(foundUser);
 
-        when(mockUserRepo.findById(valid_userID)).thenReturn(foundUserOptional);
+        when(mockUserRepo.findResponseById(valid_userID)).thenReturn(foundUserOptional);
 
         // Act
         UserResponse actual_result = sut.getUserById(valid_userID);
 
         // Assert
-        verify(mockUserRepo, times(1)).findById(valid_userID);
+        verify(mockUserRepo, times(1)).findResponseById(valid_userID);
+        verify(mockUserRepo, times(0)).findById(any());
 
         Assertions.assertNotNull(actual_result, "Expected actual object returned");
 
@@ -60,9 +123,9 @@ public class UserServiceTest {
     public void test_getUserById_throwsUserNotFoundException_givenInvalidId() {
         // Arrange
         Long invalid_userID = 5l;
-        Optional<User> foundUserOptional = Optional.empty();
+        Optional<UserResponse> foundUserOptional = Optional.empty();
 
-        when(mockUserRepo.findById(invalid_userID)).thenReturn(foundUserOptional);
+        when(mockUserRepo.findResponseById(invalid_userID)).thenReturn(foundUserOptional);
 
         // Act
         Assertions.assertThrows(
@@ -72,7 +135,361 @@ public class UserServiceTest {
         );
 
         // Assert
-        verify(mockUserRepo, times(1)).findById(invalid_userID);
+        verify(mockUserRepo, times(1)).findResponseById(invalid_userID);
+
+    }
+
+    @Test
+    public void test_findUser_returnsNotFound_givenInvalidId() {
+        // Arrange
+        Long invalid_userID = 5l;
+
+        when(mockUserRepo.findResponseById(invalid_userID)).thenReturn(Optional.empty());
+
+        // Act
+        ServiceResult<UserResponse> result = sut.findUser(invalid_userID);
+
+        // Assert
+        Assertions.assertEquals(ServiceResult.Status.NOT_FOUND, result.getStatus(), "Missing user should be reported as a result, not thrown");
+        Assertions.assertNull(result.getValue(), "Failed result should carry no value");
+        Assertions.assertEquals(0, UserNotFoundException.INSTANCE.getStackTrace().length, "Shared exception should not capture a stack trace");
+        verify(mockUserRepo, times(1)).findResponseById(invalid_userID);
+
+    }
+
+    @Test
+    public void test_findUser_sharesOneQuery_givenConcurrentCallsForSameId() throws Exception {
+        // Arrange
+        Long invalid_userID = 7l;
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch releaseQuery = new CountDownLatch(1);
+
+        when(mockUserRepo.findResponseById(invalid_userID)).thenAnswer(invocation -> {
+            queryStarted.countDown();
+            releaseQuery.await(5, TimeUnit.SECONDS);
+            return Optional.empty();
+        });
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+
+        // Act
+        Future<ServiceResult<UserResponse>> leader = callers.submit(() -> sut.findUser(invalid_userID));
+        queryStarted.await(5, TimeUnit.SECONDS);
+        Future<ServiceResult<UserResponse>> follower = callers.submit(() -> sut.findUser(invalid_userID));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescedCount("user_by_id") < 1 && System.nanoTime() < deadline)
+            Thread.sleep(1);
+
+        releaseQuery.countDown();
+        ServiceResult<UserResponse> leaderResult = leader.get(5, TimeUnit.SECONDS);
+        ServiceResult<UserResponse> followerResult = follower.get(5, TimeUnit.SECONDS);
+        callers.shutdown();
+
+        // Assert
+        Assertions.assertEquals(ServiceResult.Status.NOT_FOUND, leaderResult.getStatus(), "Leader should see the missing user");
+        Assertions.assertEquals(ServiceResult.Status.NOT_FOUND, followerResult.getStatus(), "Follower should share the leader's result");
+        Assertions.assertEquals(1.0, coalescedCount("user_by_id"), "Second call should have joined the first");
+        verify(mockUserRepo, times(1)).findResponseById(invalid_userID);
+
+    }
+
+    private double coalescedCount(String flight) {
+        Double value = flightMetrics.getSampleValue(
+                "single_flight_coalesced_count_total", new String[] { "flight" }, new String[] { flight });
+
+        return value == null ? 0 : value;
+    }
+
+    @Test
+    public void test_getUserById_readsFromCache_givenRepeatedId() {
+        // Arrange
+        Long valid_userID = 1l;
+        Optional<UserResponse> foundUserOptional = Optional.of(new UserResponse(1l, "valid"));
+
+        when(mockUserRepo.findResponseById(valid_userID)).thenReturn(foundUserOptional);
+
+        // Act
+        sut.getUserById(valid_userID);
+        UserResponse actual_result = sut.getUserById(valid_userID);
+
+        // Assert
+        verify(mockUserRepo, times(1)).findResponseById(valid_userID);
+
+        Assertions.assertEquals("valid", actual_result.getUsername(), "Should be the same values");
+
+    }
+
+    @Test
+    public void test_getUserById_reloadsUser_afterUpdate() {
+        // Arrange
+        UpdateUserRequest req = new UpdateUserRequest();
+        req.setUserID(1l);
+        req.setUsername("newUsername");
+
+        when(mockUserRepo.findResponseById(req.getUserID()))
+                .thenReturn(Optional.of(new UserResponse(1l, "oldUsername")))
+                .thenReturn(Optional.of(new UserResponse(req.get())));
+        when(mockUserRepo.findVersionById(req.getUserID())).thenReturn(Optional.of(0l));
+        when(mockUserRepo.updateUsernameIfVersion(req.getUserID(), req.getUsername(), 0l)).thenReturn(1);
+
+        // Act
+        sut.getUserById(req.getUserID());
+        sut.updateUser(req);
+        UserResponse actual_result = sut.getUserById(req.getUserID());
+
+        // Assert
+        verify(mockUserRepo, times(2)).findResponseById(req.getUserID());
+
+        Assertions.assertEquals(req.getUsername(), actual_result.getUsername(), "Expected cached entry to be invalidated by update");
+
+    }
+
+    @Test
+    public void test_getUserById_reloadsUser_afterUpdateOnOtherInstance() {
+        // Arrange
+        LoopbackInvalidationBus bus = new LoopbackInvalidationBus();
+        UserService instanceA = instanceOn(bus);
+        UserService instanceB = instanceOn(bus);
+
+        UpdateUserRequest req = new UpdateUserRequest();
+        req.setUserID(1l);
+        req.setUsername("newUsername");
+
+        when(mockUserRepo.findResponseById(req.getUserID()))
+                .thenReturn(Optional.of(new UserResponse(1l, "oldUsername", 0l)))
+                .thenReturn(Optional.of(new UserResponse(1l, req.getUsername(), 1l)));
+        when(mockUserRepo.updateUsernameIfVersion(req.getUserID(), req.getUsername(), 0l)).thenReturn(1);
+
+        // Act
+        instanceA.getUserById(req.getUserID());
+        instanceB.updateUser(req, 0l);
+        UserResponse actual_result = instanceA.getUserById(req.getUserID());
+
+        // Assert
+        verify(mockUserRepo, times(2)).findResponseById(req.getUserID());
+
+        Assertions.assertEquals(req.getUsername(), actual_result.getUsername(), "Expected update on one instance to invalidate the other's cache");
+
+    }
+
+    // another service over the same repository with a cache of its own, as on another pod
+    private UserService instanceOn(LoopbackInvalidationBus bus) {
+        return new UserService(
+                mockUserRepo,
+                usernameIndex,
+                prefixIndex,
+                new UserResponseCache(new CollectorRegistry(), 100, Duration.ofMinutes(1), Duration.ofMinutes(1)),
+                new UserBatchWriter(mockUserRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()),
+                new UserGroupCommitter(new UserBatchWriter(mockUserRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()), new CollectorRegistry(), false, 100, Duration.ofMillis(2), 1000),
+                new SingleFlights(new CollectorRegistry(), true),
+                bus,
+                10,
+                10,
+                2,
+                2
+        );
+    }
+
+    @Test
+    public void test_getUserVersion_readsFromCache_givenCachedUser() {
+        // Arrange
+        Long valid_userID = 1l;
+
+        when(mockUserRepo.findResponseById(valid_userID)).thenReturn(Optional.of(new UserResponse(1l, "valid", 3l)));
+        sut.getUserById(valid_userID);
+
+        // Act
+        Long actual_result = sut.getUserVersion(valid_userID);
+
+        // Assert
+        Assertions.assertEquals(3l, actual_result, "Expected version of the cached user");
+
+        verify(mockUserRepo, times(0)).findVersionById(any());
+
+    }
+
+    @Test
+    public void test_getUserVersion_queriesVersionOnly_givenUncachedUser() {
+        // Arrange
+        Long valid_userID = 1l;
+
+        when(mockUserRepo.findVersionById(valid_userID)).thenReturn(Optional.of(4l));
+
+        // Act
+        Long actual_result = sut.getUserVersion(valid_userID);
+
+        // Assert
+        Assertions.assertEquals(4l, actual_result, "Expected version from the repository");
+
+        verify(mockUserRepo, times(1)).findVersionById(valid_userID);
+        verify(mockUserRepo, times(0)).findResponseById(any());
+
+    }
+
+    @Test
+    public void test_getUserVersion_throwsUserNotFoundException_givenInvalidId() {
+        // Arrange
+        when(mockUserRepo.findVersionById(365l)).thenReturn(Optional.empty());
+
+        // Act & Assert
+        Assertions.assertThrows(
+                UserNotFoundException.class,
+                () -> sut.getUserVersion(365l),
+                "Expected Exception to be thrown for a missing user"
+        );
+
+    }
+
+    @Test
+    public void test_listUsers_returnsNextCursor_givenMoreUsersThanPageSize() {
+        // Arrange
+        when(mockUserRepo.findPageAfter(5L, PageRequest.of(0, 3))).thenReturn(List.of(
+                new UserResponse(6L, "test6"),
+                new UserResponse(7L, "test7"),
+                new UserResponse(8L, "test8")
+        ));
+
+        // Act
+        UserPage page = sut.listUsers(5L, 2);
+
+        // Assert
+        Assertions.assertEquals(2, page.getUsers().size(), "Expected page to be cut to the requested size");
+        Assertions.assertEquals(7L, page.getNextCursor(), "Expected cursor to be the last id on the page");
+
+        verify(mockUserRepo, times(1)).findPageAfter(5L, PageRequest.of(0, 3));
+
+    }
+
+    @Test
+    public void test_listUsers_returnsNoCursor_givenLastPage() {
+        // Arrange
+        when(mockUserRepo.findPageAfter(Long.MIN_VALUE, PageRequest.of(0, 3))).thenReturn(List.of(
+                new UserResponse(1L, "test1")
+        ));
+
+        // Act
+        UserPage page = sut.listUsers(null, 100);
+
+        // Assert
+        Assertions.assertEquals(1, page.getUsers().size(), "Expected every remaining user");
+        Assertions.assertNull(page.getNextCursor(), "Expected no cursor after the last page");
+
+        verify(mockUserRepo, times(1)).findPageAfter(Long.MIN_VALUE, PageRequest.of(0, 3));
+
+    }
+
+    @Test
+    public void test_listUsers_throwsInvalidRequestException_givenNonPositiveLimit() {
+        // Act
+        Assertions.assertThrows(
+                InvalidRequestException.class,
+                () -> sut.listUsers(null, 0),
+                "Expected Exception to be thrown for a page size below 1"
+        );
+
+        // Assert
+        verify(mockUserRepo, times(0)).findPageAfter(any(), any());
+
+    }
+
+    @Test
+    public void test_searchUsernames_answersFromPrefixIndex_givenLoadedIndex() {
+        // Arrange
+        when(mockUserRepo.findVersionedPageAfter(Long.MIN_VALUE, PageRequest.of(0, 1000))).thenReturn(List.of(
+                new UserResponse(1L, "alice"),
+                new UserResponse(2L, "alex"),
+                new UserResponse(3L, "bob")
+        ));
+        prefixIndex.load();
+
+        // Act
+        List<UserResponse> matches = sut.searchUsernames("al", null);
+
+        // Assert
+        Assertions.assertEquals(
+                List.of(new UserResponse(2L, "alex"), new UserResponse(1L, "alice")),
+                matches,
+                "Expected matching users in username order"
+        );
+
+        verify(mockUserRepo, times(0)).findByUsernamePrefix(any(), any());
+
+    }
+
+    @Test
+    public void test_searchUsernames_reflectsWrites_givenLoadedIndex() {
+        // Arrange
+        when(mockUserRepo.findVersionedPageAfter(Long.MIN_VALUE, PageRequest.of(0, 1000))).thenReturn(List.of(
+                new UserResponse(1L, "alice"),
+                new UserResponse(2L, "alex")
+        ));
+        when(mockUserRepo.findVersionById(1L)).thenReturn(Optional.of(0L));
+        when(mockUserRepo.updateUsernameIfVersion(1L, "bob", 0L)).thenReturn(1);
+        when(mockUserRepo.deleteUserById(2L)).thenReturn(1);
+        prefixIndex.load();
+
+        UpdateUserRequest req = new UpdateUserRequest();
+        req.setUserID(1L);
+        req.setUsername("bob");
+
+        // Act
+        sut.updateUser(req);
+        sut.deleteUser(2L);
+
+        // Assert
+        Assertions.assertTrue(sut.searchUsernames("al", null).isEmpty(), "Expected renamed and deleted users to be gone");
+        Assertions.assertEquals(
+                List.of(new UserResponse(1L, "bob")),
+                sut.searchUsernames("b", null),
+                "Expected renamed user under the new name"
+        );
+
+    }
+
+    @Test
+    public void test_searchUsernames_ignoresLateChanges_fromOtherInstance() {
+        // Arrange
+        LoopbackInvalidationBus bus = new LoopbackInvalidationBus();
+        UserService instance = instanceOn(bus);
+
+        when(mockUserRepo.findVersionedPageAfter(Long.MIN_VALUE, PageRequest.of(0, 1000))).thenReturn(List.of());
+        prefixIndex.load();
+
+        long now = System.currentTimeMillis();
+
+        // Act
+        bus.publish(new UserChangeEvent(UserChangeEvent.Type.DELETED, 3L, null, null, "other", now));
+        bus.publish(new UserChangeEvent(UserChangeEvent.Type.CREATED, 3L, "carol", 0L, "other", now));
+
+        bus.publish(new UserChangeEvent(UserChangeEvent.Type.CREATED, 4L, "dan", null, "other", now));
+        bus.publish(new UserChangeEvent(UserChangeEvent.Type.UPDATED, 4L, "dave", 2L, "other", now));
+        bus.publish(new UserChangeEvent(UserChangeEvent.Type.UPDATED, 4L, "david", 1L, "other", now));
+
+        // Assert
+        Assertions.assertTrue(instance.searchUsernames("ca", null).isEmpty(), "Expected create arriving after its delete to be ignored");
+        Assertions.assertEquals(
+                List.of(new UserResponse(4L, "dave")),
+                instance.searchUsernames("d", null),
+                "Expected older rename arriving late to be ignored"
+        );
+
+    }
+
+    @Test
+    public void test_searchUsernames_queriesRepository_givenIndexNotLoaded() {
+        // Arrange
+        when(mockUserRepo.findByUsernamePrefix("a\\_", PageRequest.of(0, 2))).thenReturn(List.of(
+                new UserResponse(1L, "a_1")
+        ));
+
+        // Act
+        List<UserResponse> matches = sut.searchUsernames("a_", 5);
+
+        // Assert
+        Assertions.assertEquals(1, matches.size(), "Expected repository result");
+
+        verify(mockUserRepo, times(1)).findByUsernamePrefix("a\\_", PageRequest.of(0, 2));
 
     }
 
@@ -80,10 +497,8 @@ public class UserServiceTest {
     public void test_checkUsernameAvailability_returnsTrue_givenTakenUsername() {
         // Arrange
         String takenUsername = "taken";
-        User foundUser = new User(1l, takenUsername);
-        Optional<User> foundUserOptional = Optional.of(foundUser);
 
-        when(mockUserRepo.findByUsername(takenUsername)).thenReturn(foundUserOptional);
+        when(mockUserRepo.existsByUsername(takenUsername)).thenReturn(true);
 
         // Act
         boolean actual_result = sut.checkUsernameAvailability(takenUsername);
@@ -97,9 +512,8 @@ public class UserServiceTest {
     public void test_checkUsernameAvailability_returnsFalse_givenNotTakenUsername() {
         // Arrange
         String notTakenUsername = "notTaken";
-        Optional<User> foundUserOptional = Optional.empty();
 
-        when(mockUserRepo.findByUsername(notTakenUsername)).thenReturn(foundUserOptional);
+        when(mockUserRepo.existsByUsername(notTakenUsername)).thenReturn(false);
 
         // Act
         boolean actual_result = sut.checkUsernameAvailability(notTakenUsername);
@@ -109,24 +523,120 @@ public class UserServiceTest {
 
     }
 
+    @Test
+    public void test_checkUsernameAvailability_skipsRepository_givenNameAbsentFromIndex() {
+        // Arrange
+        String notTakenUsername = "notTaken";
+
+        when(mockUserRepo.findPageAfter(any(), any())).thenReturn(List.of(new UserResponse(1l, "taken")));
+        usernameIndex.rebuild();
+
+        // Act
+        boolean actual_result = sut.checkUsernameAvailability(notTakenUsername);
+
+        // Assert
+        Assertions.assertFalse(actual_result, "Expected false when username is absent from the index");
+
+        verify(mockUserRepo, times(0)).existsByUsername(any());
+
+    }
+
+    @Test
+    public void test_usernameIndex_rebuildsFromKeysetPages() {
+        // Arrange
+        List<UserResponse> firstPage = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++)
+            firstPage.add(new UserResponse(id, "paged_" + id));
+
+        when(mockUserRepo.findPageAfter(Long.MIN_VALUE, PageRequest.of(0, 1000))).thenReturn(firstPage);
+        when(mockUserRepo.findPageAfter(1000l, PageRequest.of(0, 1000))).thenReturn(List.of(new UserResponse(1001l, "paged_last")));
+        when(mockUserRepo.existsByUsername(any())).thenReturn(true);
+
+        // Act
+        usernameIndex.rebuild();
+
+        // Assert
+        Assertions.assertTrue(sut.checkUsernameAvailability("paged_1"), "Expected a name of the first page to be indexed");
+        Assertions.assertTrue(sut.checkUsernameAvailability("paged_last"), "Expected a name of the last page to be indexed");
+
+        verify(mockUserRepo, times(2)).findPageAfter(any(), any());
+        verify(mockUserRepo, times(2)).existsByUsername(any());
+
+    }
+
+    @Test
+    public void test_checkUsernameAvailability_queriesRepository_givenNamePresentInIndex() {
+        // Arrange
+        String takenUsername = "taken";
+
+        when(mockUserRepo.findPageAfter(any(), any())).thenReturn(List.of(new UserResponse(1l, takenUsername)));
+        when(mockUserRepo.existsByUsername(takenUsername)).thenReturn(true);
+        usernameIndex.rebuild();
+
+        // Act
+        boolean actual_result = sut.checkUsernameAvailability(takenUsername);
+
+        // Assert
+        Assertions.assertTrue(actual_result, "Expected true when index and database both find the username");
+
+        verify(mockUserRepo, times(1)).existsByUsername(takenUsername);
+
+    }
+
+    @Test
+    public void test_checkUsernamesAvailability_returnsAvailabilityPerName_givenMixedNames() {
+        // Arrange
+        List<String> usernames = List.of("taken", "free", "alsoFree");
+
+        when(mockUserRepo.findPageAfter(any(), any())).thenReturn(List.of(new UserResponse(1l, "taken"), new UserResponse(2l, "free")));
+        when(mockUserRepo.findExistingUsernames(any())).thenReturn(List.of("taken"));
+        usernameIndex.rebuild();
+
+        // Act
+        Map<String, Boolean> actual_result = sut.checkUsernamesAvailability(usernames);
+
+        // Assert
+        Assertions.assertEquals(Map.of("taken", false, "free", true, "alsoFree", true), actual_result, "Expected availability for every name");
+
+        verify(mockUserRepo, times(1)).findExistingUsernames(List.of("taken", "free"));
+        verify(mockUserRepo, times(0)).existsByUsername(any());
+
+    }
+
+    @Test
+    public void test_checkUsernamesAvailability_throwsInvalidRequestException_givenNullName() {
+        // Arrange
+        List<String> usernames = Arrays.asList("taken", null);
+
+        // Act
+        Assertions.assertThrows(
+                InvalidRequestException.class,
+                () -> sut.checkUsernamesAvailability(usernames),
+                "Expected Exception to be thrown when a name is missing"
+        );
+
+        // Assert
+        verify(mockUserRepo, times(0)).findExistingUsernames(any());
+
+    }
+
     @Test
     public void test_addUser_returnsNewUser_givenValidRequest() {
         // Arrange
         String notTakenUsername = "notTaken";
-        Optional<User> foundUserOptional = Optional.empty();
 
         User savedUser = new User(1l, "notTaken");
 
-        when(mockUserRepo.findByUsername(notTakenUsername))
-                .thenReturn(foundUserOptional);
-
-        when(mockUserRepo.save(any()))
+        when(mockUserRepo.saveAndFlush(any()))
                 .thenReturn(savedUser);
 
         // Act
         UserResponse actual_result = sut.addUser(notTakenUsername);
 
         // Assert
+        verify(mockUserRepo, times(0)).findByUsername(any());
+        verify(mockUserRepo, times(1)).saveAndFlush(any());
+
         Assertions.assertNotNull(actual_result, "Expected actual object returned");
 
         Assertions.assertEquals(savedUser.getUserID(), actual_result.getUserID(), "Should be the same values");
@@ -138,10 +648,8 @@ public class UserServiceTest {
     public void test_addUser_throwsDuplicateUsernameException_givenTakenName() {
         // Arrange
         String takenName = "taken";
-        User foundUser = new User(1l, "taken");
-        Optional<User> foundUserOptional = Optional.of(foundUser);
 
-        when(mockUserRepo.findByUsername(takenName)).thenReturn(foundUserOptional);
+        when(mockUserRepo.saveAndFlush(any())).thenThrow(usernameTaken());
 
         // Act
         Assertions.assertThrows(
@@ -151,8 +659,359 @@ public class UserServiceTest {
         );
 
         // Assert
-        verify(mockUserRepo, times(1)).findByUsername(takenName);
-        verify(mockUserRepo, times(0)).save(any());
+        verify(mockUserRepo, times(0)).findByUsername(takenName);
+        verify(mockUserRepo, times(1)).saveAndFlush(any());
+
+    }
+
+    @Test
+    public void test_tryAddUser_returnsConflict_givenTakenName() {
+        // Arrange
+        String takenName = "taken";
+
+        when(mockUserRepo.saveAndFlush(any())).thenThrow(usernameTaken());
+
+        // Act
+        ServiceResult<UserResponse> result = sut.tryAddUser(takenName);
+
+        // Assert
+        Assertions.assertEquals(ServiceResult.Status.CONFLICT, result.getStatus(), "Taken name should be reported as a conflict");
+        Assertions.assertFalse(result.isOk(), "Conflict should not be ok");
+        verify(mockUserRepo, times(1)).saveAndFlush(any());
+
+    }
+
+    @Test
+    public void test_addUser_throwsInvalidRequestException_givenTooLongName() {
+        // Arrange
+        String longName = "a".repeat(User.MAX_USERNAME_LENGTH + 1);
+
+        // Act
+        Assertions.assertThrows(
+                InvalidRequestException.class,
+                () -> sut.addUser(longName),
+                "Expected Exception to be thrown when name does not fit the column"
+        );
+
+        // Assert
+        verify(mockUserRepo, times(0)).saveAndFlush(any());
+
+    }
+
+    @Test
+    public void test_addUser_throwsInvalidRequestException_givenBlankName() {
+        // Act
+        Assertions.assertThrows(
+                InvalidRequestException.class,
+                () -> sut.addUser("  "),
+                "Expected Exception to be thrown when name is blank"
+        );
+
+        // Assert
+        verify(mockUserRepo, times(0)).saveAndFlush(any());
+
+    }
+
+    @Test
+    public void test_tryAddUser_rethrows_givenViolationOtherThanTakenName() {
+        // Arrange
+        DataIntegrityViolationException tooLong = new DataIntegrityViolationException("could not execute statement",
+                new DataException("Value too long for column", null));
+
+        when(mockUserRepo.saveAndFlush(any())).thenThrow(tooLong);
+
+        // Act
+        DataIntegrityViolationException thrown = Assertions.assertThrows(
+                DataIntegrityViolationException.class,
+                () -> sut.tryAddUser("name"),
+                "Only the username constraint should read as a conflict"
+        );
+
+        // Assert
+        Assertions.assertSame(tooLong, thrown, "Expected the original violation to be rethrown");
+
+    }
+
+    @Test
+    public void test_tryAddUser_returnsPerCallerResults_givenGroupCommitEnabled() throws Exception {
+        // Arrange
+        UserGroupCommitter groupCommitter = new UserGroupCommitter(
+                new UserBatchWriter(mockUserRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()), new CollectorRegistry(), true, 10, Duration.ofMillis(50), 1000);
+
+        UserService groupedSut = new UserService(
+                mockUserRepo,
+                usernameIndex,
+                prefixIndex,
+                new UserResponseCache(new CollectorRegistry(), 100, Duration.ofMinutes(1), Duration.ofMinutes(1)),
+                new UserBatchWriter(mockUserRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()),
+                groupCommitter,
+                new SingleFlights(new CollectorRegistry(), true),
+                new LoopbackInvalidationBus(),
+                10,
+                10,
+                2,
+                2
+        );
+
+        when(mockUserRepo.findExistingUsernames(any())).thenReturn(List.of("taken"));
+        when(mockUserRepo.saveAll(any())).thenReturn(List.of(new User(52l, "grouped")));
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+
+        // Act
+        Future<ServiceResult<UserResponse>> created = callers.submit(() -> groupedSut.tryAddUser("grouped"));
+        Future<ServiceResult<UserResponse>> conflict = callers.submit(() -> groupedSut.tryAddUser("taken"));
+
+        ServiceResult<UserResponse> createdResult = created.get(5, TimeUnit.SECONDS);
+        ServiceResult<UserResponse> conflictResult = conflict.get(5, TimeUnit.SECONDS);
+
+        callers.shutdown();
+        groupCommitter.shutdown();
+
+        // Assert
+        Assertions.assertEquals(ServiceResult.Status.OK, createdResult.getStatus(), "New name should be created");
+        Assertions.assertEquals(52l, createdResult.getValue().getUserID(), "Caller should get the id of its own row");
+        Assertions.assertEquals(ServiceResult.Status.CONFLICT, conflictResult.getStatus(), "Taken name should conflict");
+
+        verify(mockUserRepo, times(0)).saveAndFlush(any());
+
+    }
+
+    @Test
+    public void test_tryAddUserAsync_batchesCreates_withoutBlockingCaller() throws Exception {
+        // Arrange
+        UserGroupCommitter groupCommitter = new UserGroupCommitter(
+                new UserBatchWriter(mockUserRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()), new CollectorRegistry(), true, 10, Duration.ofMillis(50), 1000);
+
+        UserService groupedSut = new UserService(
+                mockUserRepo,
+                usernameIndex,
+                prefixIndex,
+                new UserResponseCache(new CollectorRegistry(), 100, Duration.ofMinutes(1), Duration.ofMinutes(1)),
+                new UserBatchWriter(mockUserRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()),
+                groupCommitter,
+                new SingleFlights(new CollectorRegistry(), true),
+                new LoopbackInvalidationBus(),
+                10,
+                10,
+                2,
+                2
+        );
+
+        when(mockUserRepo.findExistingUsernames(any())).thenReturn(List.of());
+        when(mockUserRepo.saveAll(any())).thenAnswer(invocation -> {
+            List<User> saved = new ArrayList<>();
+            for (User user : (Iterable<User>) invocation.getArgument(0))
+                saved.add(new User(60l + saved.size(), user.getUsername()));
+            return saved;
+        });
+
+        // Act
+        List<CompletableFuture<ServiceResult<UserResponse>>> created = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            created.add(groupedSut.tryAddUserAsync("async_" + i));
+
+        List<ServiceResult<UserResponse>> results = new ArrayList<>();
+        for (CompletableFuture<ServiceResult<UserResponse>> pending : created)
+            results.add(pending.get(5, TimeUnit.SECONDS));
+
+        groupCommitter.shutdown();
+
+        // Assert
+        for (int i = 0; i < results.size(); i++) {
+            Assertions.assertEquals(ServiceResult.Status.OK, results.get(i).getStatus(), "Every name should be created");
+            Assertions.assertEquals("async_" + i, results.get(i).getValue().getUsername(), "Caller should get its own row");
+        }
+
+        verify(mockUserRepo, times(1)).saveAll(any());
+
+    }
+
+    @Test
+    public void test_groupCommitSubmit_alwaysAnswered_givenShutdownRacingCreates() throws Exception {
+        // Arrange
+        when(mockUserRepo.findExistingUsernames(any())).thenReturn(List.of());
+        when(mockUserRepo.saveAll(any())).thenAnswer(invocation -> {
+            List<User> saved = new ArrayList<>();
+            for (User user : (Iterable<User>) invocation.getArgument(0))
+                saved.add(new User(70l + saved.size(), user.getUsername()));
+            return saved;
+        });
+
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+
+        for (int round = 0; round < 50; round++) {
+            UserGroupCommitter groupCommitter = new UserGroupCommitter(
+                    new UserBatchWriter(mockUserRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()), new CollectorRegistry(), true, 10, Duration.ofMillis(1), 1000);
+
+            // Act
+            Future<List<CompletableFuture<BulkCreateResult>>> submitted = callers.submit(() -> {
+                List<CompletableFuture<BulkCreateResult>> pending = new ArrayList<>();
+                try {
+                    for (int i = 0; ; i++)
+                        pending.add(groupCommitter.submit("racing_" + i));
+                } catch (ServiceUnavailableException e) {
+                    return pending;
+                }
+            });
+
+            Thread.sleep(1);
+            groupCommitter.shutdown();
+
+            // Assert
+            for (CompletableFuture<BulkCreateResult> pending : submitted.get(5, TimeUnit.SECONDS)) {
+                try {
+                    pending.get(5, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    Assertions.assertTrue(e.getCause() instanceof ServiceUnavailableException, "Expected creates cut off by shutdown to be refused");
+                }
+            }
+        }
+
+        callers.shutdown();
+
+    }
+
+    @Test
+    public void test_tryAddUserAsync_failsOnlyOwnCaller_givenBatchRejected() throws Exception {
+        // Arrange
+        UserGroupCommitter groupCommitter = new UserGroupCommitter(
+                new UserBatchWriter(mockUserRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()), new CollectorRegistry(), true, 10, Duration.ofMillis(50), 1000);
+
+        UserService groupedSut = new UserService(
+                mockUserRepo,
+                usernameIndex,
+                prefixIndex,
+                new UserResponseCache(new CollectorRegistry(), 100, Duration.ofMinutes(1), Duration.ofMinutes(1)),
+                new UserBatchWriter(mockUserRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()),
+                groupCommitter,
+                new SingleFlights(new CollectorRegistry(), true),
+                new LoopbackInvalidationBus(),
+                10,
+                10,
+                2,
+                2
+        );
+
+        when(mockUserRepo.findExistingUsernames(any())).thenReturn(List.of());
+        when(mockUserRepo.saveAll(any())).thenAnswer(invocation -> {
+            List<User> saved = new ArrayList<>();
+            for (User user : (Iterable<User>) invocation.getArgument(0)) {
+                if (user.getUsername().equals("rejected"))
+                    throw new DataIntegrityViolationException("could not execute statement",
+                            new DataException("Value too long for column", null));
+
+                saved.add(new User(70l + saved.size(), user.getUsername()));
+            }
+            return saved;
+        });
+
+        // Act
+        CompletableFuture<ServiceResult<UserResponse>> before = groupedSut.tryAddUserAsync("fine_1");
+        CompletableFuture<ServiceResult<UserResponse>> rejected = groupedSut.tryAddUserAsync("rejected");
+        CompletableFuture<ServiceResult<UserResponse>> after = groupedSut.tryAddUserAsync("fine_2");
+
+        ServiceResult<UserResponse> beforeResult = before.get(5, TimeUnit.SECONDS);
+        ServiceResult<UserResponse> afterResult = after.get(5, TimeUnit.SECONDS);
+        Exception failure = Assertions.assertThrows(Exception.class, () -> rejected.get(5, TimeUnit.SECONDS));
+
+        groupCommitter.shutdown();
+
+        // Assert
+        Assertions.assertEquals(ServiceResult.Status.OK, beforeResult.getStatus(), "Other callers in the batch should still be created");
+        Assertions.assertEquals("fine_1", beforeResult.getValue().getUsername(), "Caller should get its own row");
+        Assertions.assertEquals(ServiceResult.Status.OK, afterResult.getStatus(), "Other callers in the batch should still be created");
+        Assertions.assertEquals("fine_2", afterResult.getValue().getUsername(), "Caller should get its own row");
+        Assertions.assertTrue(failure.getCause() instanceof DataIntegrityViolationException, "Only the rejected caller should see the failure, not as a conflict");
+
+    }
+
+    @Test
+    public void test_tryAddUserAsync_failsWithoutQueueing_givenTooLongName() {
+        // Arrange
+        UserGroupCommitter groupCommitter = mock(UserGroupCommitter.class);
+        when(groupCommitter.isEnabled()).thenReturn(true);
+
+        UserService groupedSut = new UserService(
+                mockUserRepo,
+                usernameIndex,
+                prefixIndex,
+                new UserResponseCache(new CollectorRegistry(), 100, Duration.ofMinutes(1), Duration.ofMinutes(1)),
+                new UserBatchWriter(mockUserRepo, ShardRouter.unsharded(), TransactionOperations.withoutTransaction()),
+                groupCommitter,
+                new SingleFlights(new CollectorRegistry(), true),
+                new LoopbackInvalidationBus(),
+                10,
+                10,
+                2,
+                2
+        );
+
+        // Act
+        CompletableFuture<ServiceResult<UserResponse>> result = groupedSut.tryAddUserAsync("a".repeat(User.MAX_USERNAME_LENGTH + 1));
+
+        // Assert
+        Exception failure = Assertions.assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(failure.getCause() instanceof InvalidRequestException, "Too long name should be a bad request");
+        verify(groupCommitter, times(0)).submit(any());
+
+    }
+
+    @Test
+    public void test_addUsers_returnsPerNameResults_givenMixedNames() {
+        // Arrange
+        List<String> usernames = List.of("taken", "new", "new");
+
+        when(mockUserRepo.findExistingUsernames(any())).thenReturn(List.of("taken"));
+        when(mockUserRepo.saveAll(any())).thenReturn(List.of(new User(51l, "new")));
+
+        // Act
+        List<BulkCreateResult> actual_result = sut.addUsers(usernames);
+
+        // Assert
+        Assertions.assertEquals(3, actual_result.size(), "Expected one result per requested name");
+
+        Assertions.assertEquals(BulkCreateResult.Status.CONFLICT, actual_result.get(0).getStatus(), "Existing name should conflict");
+        Assertions.assertEquals(BulkCreateResult.Status.CREATED, actual_result.get(1).getStatus(), "New name should be created");
+        Assertions.assertEquals(51l, actual_result.get(1).getUserID(), "Created result should carry the new id");
+        Assertions.assertEquals(BulkCreateResult.Status.CONFLICT, actual_result.get(2).getStatus(), "Repeated name should conflict");
+
+        verify(mockUserRepo, times(1)).findExistingUsernames(any());
+        verify(mockUserRepo, times(1)).saveAll(any());
+
+    }
+
+    @Test
+    public void test_addUsers_throwsInvalidRequestException_givenTooManyNames() {
+        // Arrange
+        List<String> usernames = List.of("a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k");
+
+        // Act
+        Assertions.assertThrows(
+                InvalidRequestException.class,
+                () -> sut.addUsers(usernames),
+                "Expected Exception to be thrown when batch exceeds the configured maximum"
+        );
+
+        // Assert
+        verify(mockUserRepo, times(0)).saveAll(any());
+
+    }
+
+    @Test
+    public void test_addUsers_throwsInvalidRequestException_givenTooLongName() {
+        // Arrange
+        List<String> usernames = List.of("fine", "a".repeat(User.MAX_USERNAME_LENGTH + 1));
+
+        // Act
+        Assertions.assertThrows(
+                InvalidRequestException.class,
+                () -> sut.addUsers(usernames),
+                "Expected Exception to be thrown when one of the names does not fit the column"
+        );
+
+        // Assert
+        verify(mockUserRepo, times(0)).saveAll(any());
 
     }
 
@@ -163,16 +1022,8 @@ public class UserServiceTest {
         req.setUserID(1l);
         req.setUsername("newUsername");
 
-        User foundUserByID = new User(1l, "oldUsername");
-        Optional<User> foundUserByIDOptional = Optional.of(foundUserByID);
-
-        Optional<User> foundUserByNameOptional = Optional.empty();
-
-        User savedUser = req.get();
-
-        when(mockUserRepo.findById(req.getUserID())).thenReturn(foundUserByIDOptional);
-        when(mockUserRepo.findByUsername(req.getUsername())).thenReturn(foundUserByNameOptional);
-        when(mockUserRepo.save(req.get())).thenReturn(savedUser);
+        when(mockUserRepo.findVersionById(req.getUserID())).thenReturn(Optional.of(4l));
+        when(mockUserRepo.updateUsernameIfVersion(req.getUserID(), req.getUsername(), 4l)).thenReturn(1);
 
         // Act
         UserResponse actual_result = sut.updateUser(req);
@@ -181,29 +1032,98 @@ public class UserServiceTest {
         Assertions.assertNotNull(actual_result, "Should have returned object of UserResponse");
 
         Assertions.assertEquals(req.getUsername(), actual_result.getUsername(), "Username should have carried through");
+        Assertions.assertEquals(5l, actual_result.getVersion(), "Expected version after the update");
 
-        verify(mockUserRepo, times(1)).findById(req.getUserID());
-        verify(mockUserRepo, times(1)).findByUsername(req.getUsername());
-        verify(mockUserRepo, times(1)).save(req.get());
+        verify(mockUserRepo, times(0)).findById(any());
+        verify(mockUserRepo, times(0)).findByUsername(any());
+        verify(mockUserRepo, times(1)).updateUsernameIfVersion(req.getUserID(), req.getUsername(), 4l);
 
     }
 
     @Test
-    public void test_updateUser_throwsUserNotFoundException_givenInvalidID() {
+    public void test_updateUser_startsOver_givenUserChangedAfterVersionRead() {
         // Arrange
         UpdateUserRequest req = new UpdateUserRequest();
-        req.setUserID(6l);
+        req.setUserID(1l);
         req.setUsername("newUsername");
 
-        Optional<User> foundUserByIDOptional = Optional.empty();
+        when(mockUserRepo.findVersionById(req.getUserID()))
+                .thenReturn(Optional.of(4l))
+                .thenReturn(Optional.of(5l));
+        when(mockUserRepo.updateUsernameIfVersion(req.getUserID(), req.getUsername(), 4l)).thenReturn(0);
+        when(mockUserRepo.updateUsernameIfVersion(req.getUserID(), req.getUsername(), 5l)).thenReturn(1);
 
-        Optional<User> foundUserByNameOptional = Optional.empty();
+        // Act
+        UserResponse actual_result = sut.updateUser(req);
 
-        User savedUser = req.get();
+        // Assert
+        Assertions.assertEquals(6l, actual_result.getVersion(), "Expected version after the retried update");
+
+        verify(mockUserRepo, times(2)).findVersionById(req.getUserID());
+
+    }
+
+    @Test
+    public void test_updateUser_throwsServiceUnavailableException_givenUserKeepsChanging() {
+        // Arrange
+        UpdateUserRequest req = new UpdateUserRequest();
+        req.setUserID(1l);
+        req.setUsername("newUsername");
+
+        when(mockUserRepo.findVersionById(req.getUserID())).thenReturn(Optional.of(4l));
+        when(mockUserRepo.updateUsernameIfVersion(req.getUserID(), req.getUsername(), 4l)).thenReturn(0);
+
+        // Act
+        Assertions.assertThrows(
+                ServiceUnavailableException.class,
+                () -> sut.updateUser(req),
+                "A rename that keeps losing to other writers should give up"
+        );
+
+        // Assert
+        verify(mockUserRepo, times(3)).updateUsernameIfVersion(req.getUserID(), req.getUsername(), 4l);
+        verify(mockUserRepo, times(0)).existsById(any());
+
+    }
+
+    @Test
+    public void test_searchUsernames_ignoresLateRename_afterUnconditionalRename() {
+        // Arrange
+        LoopbackInvalidationBus bus = new LoopbackInvalidationBus();
+        UserService instance = instanceOn(bus);
+
+        when(mockUserRepo.findVersionedPageAfter(Long.MIN_VALUE, PageRequest.of(0, 1000))).thenReturn(List.of(
+                new UserResponse(1L, "erin", 1L)
+        ));
+        when(mockUserRepo.findVersionById(1L)).thenReturn(Optional.of(1L));
+        when(mockUserRepo.updateUsernameIfVersion(1L, "eve", 1L)).thenReturn(1);
+        prefixIndex.load();
+
+        UpdateUserRequest req = new UpdateUserRequest();
+        req.setUserID(1L);
+        req.setUsername("eve");
+
+        // Act
+        instance.updateUser(req);
+        bus.publish(new UserChangeEvent(UserChangeEvent.Type.UPDATED, 1L, "emma", 1L, "other", System.currentTimeMillis()));
+
+        // Assert
+        Assertions.assertEquals(
+                List.of(new UserResponse(1L, "eve")),
+                instance.searchUsernames("e", null),
+                "Expected rename older than the unconditional one to be ignored"
+        );
+
+    }
+
+    @Test
+    public void test_updateUser_throwsUserNotFoundException_givenInvalidID() {
+        // Arrange
+        UpdateUserRequest req = new UpdateUserRequest();
+        req.setUserID(6l);
+        req.setUsername("newUsername");
 
-        when(mockUserRepo.findById(req.getUserID())).thenReturn(foundUserByIDOptional);
-        when(mockUserRepo.findByUsername(any())).thenReturn(foundUserByNameOptional);
-        when(mockUserRepo.save(any())).thenReturn(savedUser);
+        when(mockUserRepo.findVersionById(req.getUserID())).thenReturn(Optional.empty());
 
         // Act
         Assertions.assertThrows(
@@ -213,7 +1133,7 @@ public class UserServiceTest {
         );
 
         //Assert
-        verify(mockUserRepo, times(1)).findById(req.getUserID());
+        verify(mockUserRepo, times(0)).updateUsernameIfVersion(any(), any(), any());
         verify(mockUserRepo, times(0)).findByUsername(any());
         verify(mockUserRepo, times(0)).save(any());
 
@@ -226,17 +1146,9 @@ public class UserServiceTest {
         req.setUserID(1l);
         req.setUsername("newUsername");
 
-        User foundUserByID = new User(1l, "oldUsername");
-        Optional<User> foundUserByIDOptional = Optional.of(foundUserByID);
-
-        User foundUserByName = new User(5l, "newUsername");
-        Optional<User> foundUserByNameOptional = Optional.of(foundUserByName);
-
-        User savedUser = req.get();
-
-        when(mockUserRepo.findById(req.getUserID())).thenReturn(foundUserByIDOptional);
-        when(mockUserRepo.findByUsername(req.getUsername())).thenReturn(foundUserByNameOptional);
-        when(mockUserRepo.save(any())).thenReturn(savedUser);
+        when(mockUserRepo.findVersionById(req.getUserID())).thenReturn(Optional.of(0l));
+        when(mockUserRepo.updateUsernameIfVersion(req.getUserID(), req.getUsername(), 0l))
+                .thenThrow(usernameTaken());
 
         // Act
         Assertions.assertThrows(
@@ -246,29 +1158,83 @@ public class UserServiceTest {
         );
 
         //Assert
-        verify(mockUserRepo, times(1)).findById(req.getUserID());
-        verify(mockUserRepo, times(1)).findByUsername(req.getUsername());
+        verify(mockUserRepo, times(1)).updateUsernameIfVersion(req.getUserID(), req.getUsername(), 0l);
+        verify(mockUserRepo, times(0)).findByUsername(req.getUsername());
         verify(mockUserRepo, times(0)).save(any());
 
     }
 
+    @Test
+    public void test_updateUser_throwsInvalidRequestException_givenNullUsername() {
+        // Arrange
+        UpdateUserRequest req = new UpdateUserRequest();
+        req.setUserID(1l);
+
+        // Act
+        Assertions.assertThrows(
+                InvalidRequestException.class,
+                () -> sut.updateUser(req),
+                "Missing username should cause InvalidRequestException"
+        );
+
+        //Assert
+        verify(mockUserRepo, times(0)).updateUsernameIfVersion(any(), any(), any());
+
+    }
+
+    @Test
+    public void test_updateUser_returnsNextVersion_givenCurrentVersion() {
+        // Arrange
+        UpdateUserRequest req = new UpdateUserRequest();
+        req.setUserID(1l);
+        req.setUsername("newUsername");
+
+        when(mockUserRepo.updateUsernameIfVersion(1l, "newUsername", 2l)).thenReturn(1);
+
+        // Act
+        UserResponse actual_result = sut.updateUser(req, 2l);
+
+        // Assert
+        Assertions.assertEquals(3l, actual_result.getVersion(), "Expected version after the update");
+
+
+    }
+
+    @Test
+    public void test_updateUser_throwsPreconditionFailedException_givenStaleVersion() {
+        // Arrange
+        UpdateUserRequest req = new UpdateUserRequest();
+        req.setUserID(1l);
+        req.setUsername("newUsername");
+
+        when(mockUserRepo.updateUsernameIfVersion(1l, "newUsername", 2l)).thenReturn(0);
+        when(mockUserRepo.existsById(1l)).thenReturn(true);
+
+        // Act
+        Assertions.assertThrows(
+                PreconditionFailedException.class,
+                () -> sut.updateUser(req, 2l),
+                "Stale version should cause PreconditionFailedException"
+        );
+
+        // Assert
+        verify(mockUserRepo, times(1)).existsById(1l);
+
+    }
+
     @Test
     public void test_deleteUser_finishesSuccessfully_givenValidID() {
         // Arrange
         Long valid_userID = 1l;
 
-        User foundUser = new User(1l, "valid");
-        Optional<User> foundUserOptional = Optional.of(foundUser);
-
-        when(mockUserRepo.findById(valid_userID)).thenReturn(foundUserOptional);
-        doNothing().when(mockUserRepo).deleteById(valid_userID);
+        when(mockUserRepo.deleteUserById(valid_userID)).thenReturn(1);
 
         // Act
         sut.deleteUser(valid_userID);
 
         //Assert
-        verify(mockUserRepo, times(1)).findById(valid_userID);
-        verify(mockUserRepo, times(1)).deleteById(valid_userID);
+        verify(mockUserRepo, times(0)).findById(any());
+        verify(mockUserRepo, times(1)).deleteUserById(valid_userID);
 
     }
 
@@ -277,10 +1243,7 @@ public class UserServiceTest {
         // Arrange
         Long invalid_userID = 6l;
 
-        Optional<User> foundUserOptional = Optional.empty();
-
-        when(mockUserRepo.findById(invalid_userID)).thenReturn(foundUserOptional);
-        doNothing().when(mockUserRepo).deleteById(any());
+        when(mockUserRepo.deleteUserById(invalid_userID)).thenReturn(0);
 
         // Act
         Assertions.assertThrows(
@@ -290,9 +1253,25 @@ public class UserServiceTest {
         );
 
         //Assert
-        verify(mockUserRepo, times(1)).findById(invalid_userID);
+        verify(mockUserRepo, times(1)).deleteUserById(invalid_userID);
         verify(mockUserRepo, times(0)).deleteById(any());
 
     }
 
+    @Test
+    public void test_tryDeleteUser_returnsNotFound_givenInvalidID() {
+        // Arrange
+        Long invalid_userID = 6l;
+
+        when(mockUserRepo.deleteUserById(invalid_userID)).thenReturn(0);
+
+        // Act
+        ServiceResult<Void> result = sut.tryDeleteUser(invalid_userID);
+
+        // Assert
+        Assertions.assertEquals(ServiceResult.Status.NOT_FOUND, result.getStatus(), "Deleting a missing user should be reported as not found");
+        verify(mockUserRepo, times(1)).deleteUserById(invalid_userID);
+
+    }
+
 }